@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/*
+    Loads weather art from a local stand-in for the art server, which answers every request
+    after a fixed delay. Timings are written to logcat under this class name, e.g.
+
+        adb logcat -s TestWeatherArtLoader
+ */
+public class TestWeatherArtLoader extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherArtLoader.class.getSimpleName();
+
+    private static final int IMAGES = 6;
+    private static final long DELAY_MILLIS = 500;
+    private static final int SOURCE_SIZE = 512;
+    private static final int ICON_SIZE = 48;
+
+    private LocalHttpServer mServer;
+    private WeatherArtLoader mLoader;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new LocalHttpServer();
+        mServer.setDefaultResponse(new LocalHttpServer.MockResponse().setStatus(404, "Not Found"));
+        mLoader = new WeatherArtLoader(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testArtIsLoadedInParallelAtSlotSize() {
+        List<String> urls = serveImages(DELAY_MILLIS);
+        // Rows with the same art share its fetch
+        urls.add(urls.get(0));
+        String missing = mServer.getUrl("/art/missing_" + System.nanoTime() + ".png");
+        urls.add(missing);
+
+        long start = System.currentTimeMillis();
+        Map<String, Bitmap> art = mLoader.loadAll(ICON_SIZE, ICON_SIZE, urls);
+        long elapsed = System.currentTimeMillis() - start;
+        Log.i(LOG_TAG, IMAGES + " images served after " + DELAY_MILLIS + "ms each, loaded in "
+                + elapsed + "ms, one after the other they'd take at least "
+                + IMAGES * DELAY_MILLIS + "ms");
+
+        assertEquals("Error: Every image should have been fetched once",
+                IMAGES + 1, mServer.getRequestCount());
+        assertEquals(IMAGES, art.size());
+        assertNull(art.get(missing));
+        for (int i = 0; i < IMAGES; i++) {
+            assertFitsIcon(art.get(urls.get(i)));
+        }
+        if (Runtime.getRuntime().availableProcessors() > 1) {
+            assertTrue("Error: The art should have been fetched side by side, took " + elapsed
+                    + "ms", elapsed < IMAGES * DELAY_MILLIS);
+        }
+    }
+
+    public void testArtIsKeptByUrlAndSize() {
+        List<String> urls = serveImages(0);
+        Map<String, Bitmap> first = mLoader.loadAll(ICON_SIZE, ICON_SIZE, urls);
+        Map<String, Bitmap> second = mLoader.loadAll(ICON_SIZE, ICON_SIZE, urls);
+        assertEquals("Error: Art loaded before should not be fetched again",
+                IMAGES, mServer.getRequestCount());
+        for (String url : urls) {
+            assertSame(first.get(url), second.get(url));
+        }
+
+        // Another slot size is another bitmap
+        Bitmap larger = mLoader.loadAll(ICON_SIZE * 2, ICON_SIZE * 2,
+                Collections.singleton(urls.get(0))).get(urls.get(0));
+        assertNotNull(larger);
+        assertNotSame(first.get(urls.get(0)), larger);
+    }
+
+    public void testLocalArtIsLoadedAtSlotSize() {
+        String missing = mServer.getUrl("/art/missing_" + System.nanoTime() + ".png");
+        Bitmap art = mLoader.load(WeatherArtLoader.SLOT_NOTIFICATION_LARGE_ICON, missing,
+                R.drawable.art_clear);
+        assertNotNull("Error: The local art should be used if the url can't be loaded", art);
+        int width = mLoader.getWidth(WeatherArtLoader.SLOT_NOTIFICATION_LARGE_ICON);
+        int height = mLoader.getHeight(WeatherArtLoader.SLOT_NOTIFICATION_LARGE_ICON);
+        assertTrue("Error: The local art should fit the large icon, not "
+                        + art.getWidth() + "x" + art.getHeight(),
+                art.getWidth() <= width && art.getHeight() <= height);
+    }
+
+    private List<String> serveImages(long delayMillis) {
+        byte[] png = createPng();
+        List<String> urls = new ArrayList<String>();
+        for (int i = 0; i < IMAGES; i++) {
+            // Unique per run, so nothing comes out of Glide's caches
+            String path = "/art/" + System.nanoTime() + "_" + i + ".png";
+            mServer.setResponseForPath(path, new LocalHttpServer.MockResponse()
+                    .setHeader("Content-Type", "image/png")
+                    .setBody(png)
+                    .setDelay(delayMillis));
+            urls.add(mServer.getUrl(path));
+        }
+        return urls;
+    }
+
+    private static void assertFitsIcon(Bitmap bitmap) {
+        assertNotNull(bitmap);
+        assertTrue("Error: The art should be loaded at the size of the icon, not "
+                        + bitmap.getWidth() + "x" + bitmap.getHeight(),
+                bitmap.getWidth() <= ICON_SIZE && bitmap.getHeight() <= ICON_SIZE);
+    }
+
+    private static byte[] createPng() {
+        Bitmap bitmap = Bitmap.createBitmap(SOURCE_SIZE, SOURCE_SIZE, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.BLUE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Compares writing weather rows with SQLiteDatabase.insert, as bulkInsert used to, with the
+    compiled statement of WeatherRowWriter. Each batch is written in one transaction, like
+    bulkInsert does. Results are written to logcat under this class name, e.g.
+
+        adb logcat -s TestBulkInsertBenchmark
+ */
+public class TestBulkInsertBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestBulkInsertBenchmark.class.getSimpleName();
+
+    // Enough rows per measurement to get past the timer resolution
+    private static final int ROWS_PER_MEASUREMENT = 20000;
+
+    private WeatherDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(mContext);
+        mDb = mDbHelper.getWritableDatabase();
+        mLocationRowId = mDb.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testWriterMatchesInsert() {
+        ContentValues weatherValues = TestUtilities.createWeatherValues(mLocationRowId);
+        assertTrue(WeatherRowWriter.canWrite(weatherValues));
+
+        WeatherRowWriter writer = new WeatherRowWriter(mDb);
+        long rowId = writer.insert(weatherValues);
+        writer.close();
+        assertTrue(rowId != -1);
+
+        Cursor cursor = mDb.query(WeatherEntry.TABLE_NAME, null, null, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("Error: Row written by WeatherRowWriter differs",
+                cursor, weatherValues);
+        cursor.close();
+
+        weatherValues.put("unknown", 1);
+        assertFalse(WeatherRowWriter.canWrite(weatherValues));
+    }
+
+    public void testBenchmark14Rows() {
+        benchmark(14);
+    }
+
+    public void testBenchmark100Rows() {
+        benchmark(100);
+    }
+
+    public void testBenchmark10000Rows() {
+        benchmark(10000);
+    }
+
+    private void benchmark(int rowCount) {
+        ContentValues[] rows = createRows(rowCount);
+        int batches = Math.max(1, ROWS_PER_MEASUREMENT / rowCount);
+
+        // Warm up both paths
+        writeBatch(rows, false);
+        writeBatch(rows, true);
+
+        long insertMicros = 0;
+        long statementMicros = 0;
+        for (int i = 0; i < batches; i++) {
+            insertMicros += writeBatch(rows, false);
+            statementMicros += writeBatch(rows, true);
+        }
+
+        Log.i(LOG_TAG, rowCount + " rows per batch, " + batches + " batches, per batch: insert "
+                + insertMicros / batches + "us, compiled statement "
+                + statementMicros / batches + "us");
+    }
+
+    /**
+     * Writes the rows into an empty weather table in one transaction.
+     *
+     * @return how long the transaction took, in microseconds
+     */
+    private long writeBatch(ContentValues[] rows, boolean compiled) {
+        mDb.delete(WeatherEntry.TABLE_NAME, null, null);
+
+        long start = System.nanoTime();
+        mDb.beginTransaction();
+        WeatherRowWriter writer = compiled ? new WeatherRowWriter(mDb) : null;
+        try {
+            for (ContentValues row : rows) {
+                long rowId = compiled
+                        ? writer.insert(row)
+                        : mDb.insert(WeatherEntry.TABLE_NAME, null, row);
+                assertTrue(rowId != -1);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            mDb.endTransaction();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(rows.length, DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME));
+        return elapsed / 1000;
+    }
+
+    private ContentValues[] createRows(int rowCount) {
+        ContentValues[] rows = new ContentValues[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(mLocationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(TestUtilities.TEST_DATE + i * DateUtils.DAY_IN_MILLIS));
+            rows[i] = weatherValues;
+        }
+        return rows;
+    }
+}
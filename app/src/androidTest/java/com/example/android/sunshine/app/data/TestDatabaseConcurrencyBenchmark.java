@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Measures how long the forecast query takes while a large sync is being written through
+    the provider, compared with an idle database. Results are written to logcat under this
+    class name, e.g.
+
+        adb logcat -s TestDatabaseConcurrencyBenchmark
+ */
+public class TestDatabaseConcurrencyBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDatabaseConcurrencyBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 50;
+    private static final int DAYS = 14;
+    private static final int READS = 200;
+
+    private long[] mLocationIds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        mLocationIds = new long[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+            locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, "location" + i);
+            Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                    locationValues);
+            mLocationIds[i] = ContentUris.parseId(locationUri);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, createSyncRows(0));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testReadLatencyDuringSync() throws Throwable {
+        Result idle = measureReads();
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicInteger syncs = new AtomicInteger();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Every round changes all the rows, so nothing is skipped as unchanged
+                while (writing.get()) {
+                    mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                            createSyncRows(syncs.incrementAndGet()));
+                }
+            }
+        }, "sync writer");
+        writer.start();
+
+        Result busy;
+        try {
+            busy = measureReads();
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+
+        Log.i(LOG_TAG, READS + " forecast reads, idle: " + idle + ", during " + syncs.get()
+                + " syncs of " + LOCATIONS * DAYS + " rows: " + busy);
+    }
+
+    private ContentValues[] createSyncRows(int round) {
+        ContentValues[] rows = new ContentValues[LOCATIONS * DAYS];
+        for (int location = 0; location < LOCATIONS; location++) {
+            for (int day = 0; day < DAYS; day++) {
+                ContentValues weatherValues = TestUtilities.createWeatherValues(mLocationIds[location]);
+                weatherValues.put(WeatherEntry.COLUMN_DATE,
+                        TestUtilities.TEST_DATE + day * DateUtils.DAY_IN_MILLIS);
+                weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + round % 10);
+                rows[location * DAYS + day] = weatherValues;
+            }
+        }
+        return rows;
+    }
+
+    private Result measureReads() {
+        // What the ForecastFragment asks for
+        Uri forecastUri = WeatherEntry.buildWeatherLocationWithStartDate("location0",
+                TestUtilities.TEST_DATE);
+        long[] micros = new long[READS];
+        for (int i = 0; i < READS; i++) {
+            long start = System.nanoTime();
+            Cursor cursor = mContext.getContentResolver().query(forecastUri, null, null, null,
+                    WeatherEntry.COLUMN_DATE + " ASC");
+            assertEquals(DAYS, cursor.getCount());
+            cursor.close();
+            micros[i] = (System.nanoTime() - start) / 1000;
+        }
+        Arrays.sort(micros);
+
+        Result result = new Result();
+        result.medianMicros = micros[READS / 2];
+        result.p95Micros = micros[READS * 95 / 100];
+        result.maxMicros = micros[READS - 1];
+        return result;
+    }
+
+    private static class Result {
+        long medianMicros;
+        long p95Micros;
+        long maxMicros;
+
+        @Override
+        public String toString() {
+            return "median " + medianMicros + "us, 95th percentile " + p95Micros + "us, max "
+                    + maxMicros + "us";
+        }
+    }
+}
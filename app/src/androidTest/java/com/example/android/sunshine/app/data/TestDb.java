@@ -16,16 +16,36 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
+import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
 import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
 
 import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 public class TestDb extends AndroidTestCase {
 
     public static final String LOG_TAG = TestDb.class.getSimpleName();
 
+    // The weather columns of the forecast list and the detail widget
+    private static final String[] LIST_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    // The index SQLite creates for the UNIQUE (date, location_id) constraint
+    private static final String UNIQUE_WEATHER_INDEX = "sqlite_autoindex_weather_1";
+
     // Since we want each test to start with a clean slate
     void deleteTheDatabase() {
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
@@ -234,4 +254,248 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    /*
+        The forecast list and the detail screen read the weather of one location by date.
+        Those queries have to be answered from an index, otherwise they slow down with every
+        day of history and every location in the table.
+     */
+    public void testWeatherQueriesUseIndex() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // Some history for a few locations, so the plans aren't made for an empty table
+        db.beginTransaction();
+        try {
+            for (int location = 0; location < 3; location++) {
+                ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+                locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                        "location" + location);
+                long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                        locationValues);
+                for (int day = 0; day < 60; day++) {
+                    ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                            TestUtilities.TEST_DATE + day * DateUtils.DAY_IN_MILLIS);
+                    db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        String dateAscending = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+        String[] locationArgs = new String[]{"location1"};
+        String[] locationAndDateArgs =
+                new String[]{"location1", Long.toString(TestUtilities.TEST_DATE)};
+
+        // getWeatherByLocationSetting, as the forecast list asks for it, from the index alone
+        assertWeatherSearchedByIndex(db, WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE, true,
+                WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(LIST_COLUMNS,
+                        WeatherProvider.sLocationSettingWithStartDateSelection, null, null,
+                        dateAscending, null),
+                locationAndDateArgs);
+        assertWeatherSearchedByIndex(db, WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE, true,
+                WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(LIST_COLUMNS,
+                        WeatherProvider.sLocationSettingSelection, null, null,
+                        dateAscending, null),
+                locationArgs);
+        // Every column still searches the index, the rows are then read from the table
+        assertWeatherSearchedByIndex(db, WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE, false,
+                WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                        WeatherProvider.sLocationSettingWithStartDateSelection, null, null,
+                        dateAscending, null),
+                locationAndDateArgs);
+
+        // getWeatherByLocationSettingAndDate matches one row of the UNIQUE (date, location_id)
+        // constraint exactly, which SQLite prefers to any other index
+        assertWeatherSearchedByIndex(db, UNIQUE_WEATHER_INDEX, false,
+                WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                        WeatherProvider.sLocationSettingAndDaySelection, null, null,
+                        null, null),
+                locationAndDateArgs);
+
+        dbHelper.close();
+    }
+
+    /**
+     * Checks the query plan for a search of the weather table by index, without sorting.
+     *
+     * @param indexName the index the search has to use
+     * @param covering  whether the index has to hold every weather column the query reads
+     */
+    private void assertWeatherSearchedByIndex(SQLiteDatabase db, String indexName,
+                                              boolean covering, String sql,
+                                              String[] selectionArgs) {
+        Pattern weatherStep = Pattern.compile("^(SEARCH|SCAN)( TABLE)? "
+                + WeatherContract.WeatherEntry.TABLE_NAME + "\\b");
+        Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        int detailIndex = plan.getColumnIndex("detail");
+        StringBuilder planText = new StringBuilder();
+        String weatherDetail = null;
+        while (plan.moveToNext()) {
+            String detail = plan.getString(detailIndex);
+            planText.append(detail).append('\n');
+            if (weatherStep.matcher(detail).find()) {
+                weatherDetail = detail;
+            }
+        }
+        plan.close();
+
+        String message = "Error: Unexpected plan for " + sql + "\n" + planText;
+        assertNotNull(message, weatherDetail);
+        assertTrue(message, weatherDetail.startsWith("SEARCH") && weatherDetail.contains("INDEX"));
+        assertTrue(message, weatherDetail.contains(indexName));
+        if (covering) {
+            assertTrue("Error: The weather isn't read from the index alone\n" + planText,
+                    weatherDetail.contains("COVERING INDEX"));
+        }
+        assertFalse("Error: The weather is sorted after the query\n" + planText,
+                planText.toString().contains("TEMP B-TREE"));
+    }
+
+    /*
+        Upgrades a database from every version that can be migrated and checks that it ends
+        up with the schema of a new install and keeps its weather.
+     */
+    public void testUpgradeFromEveryVersion() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        Set<String> currentSchema = describeSchema(dbHelper.getReadableDatabase());
+        dbHelper.close();
+
+        for (int version = WeatherDbHelper.OLDEST_MIGRATABLE_VERSION;
+             version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            deleteTheDatabase();
+            createDatabase(version);
+
+            dbHelper = new WeatherDbHelper(mContext);
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+            assertEquals("Error: The schema upgraded from version " + version
+                    + " differs from a new one", currentSchema, describeSchema(db));
+
+            Cursor weatherCursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    null, null, null, null, null, null);
+            assertTrue("Error: The weather was lost upgrading from version " + version,
+                    weatherCursor.moveToFirst());
+            ContentValues expectedValues = TestUtilities.createWeatherValues(1);
+            TestUtilities.validateCurrentRecord("Error: Weather changed upgrading from version "
+                    + version, weatherCursor, expectedValues);
+            assertFalse(weatherCursor.moveToNext());
+            weatherCursor.close();
+            dbHelper.close();
+        }
+    }
+
+    /*
+        A database older than any upgrade step is dropped and created anew. What those versions
+        looked like doesn't matter, so this takes the oldest migratable one and claims to be
+        older.
+     */
+    public void testUnmigratableVersionIsRecreated() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        Set<String> currentSchema = describeSchema(dbHelper.getReadableDatabase());
+        dbHelper.close();
+
+        deleteTheDatabase();
+        createDatabase(WeatherDbHelper.OLDEST_MIGRATABLE_VERSION);
+        SQLiteDatabase oldDb = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        oldDb.setVersion(WeatherDbHelper.OLDEST_MIGRATABLE_VERSION - 1);
+        oldDb.close();
+
+        dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals("Error: The recreated schema differs from a new one",
+                currentSchema, describeSchema(db));
+
+        Cursor weatherCursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        assertFalse("Error: An unmigratable database was kept", weatherCursor.moveToFirst());
+        weatherCursor.close();
+        dbHelper.close();
+    }
+
+    /*
+        Creates the database as the given version of the app left it, with a location and its
+        weather for one day.
+     */
+    private void createDatabase(int version) {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        switch (version) {
+            case 2:
+                db.execSQL("CREATE TABLE location (_id INTEGER PRIMARY KEY," +
+                        " location_setting TEXT UNIQUE NOT NULL, city_name TEXT NOT NULL," +
+                        " coord_lat REAL NOT NULL, coord_long REAL NOT NULL);");
+                db.execSQL("CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        " location_id INTEGER NOT NULL, date INTEGER NOT NULL," +
+                        " short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL," +
+                        " min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL," +
+                        " pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL," +
+                        " FOREIGN KEY (location_id) REFERENCES location (_id)," +
+                        " UNIQUE (date, location_id) ON CONFLICT REPLACE);");
+                long locationRowId = db.insert("location", null,
+                        TestUtilities.createNorthPoleLocationValues());
+                db.insert("weather", null, TestUtilities.createWeatherValues(locationRowId));
+                break;
+            default:
+                fail("Add the schema of database version " + version + " to createDatabase");
+        }
+        db.setVersion(version);
+        db.close();
+    }
+
+    /*
+        Describes the columns of the tables and the indexes on them.
+     */
+    private static Set<String> describeSchema(SQLiteDatabase db) {
+        Set<String> schema = new HashSet<String>();
+        Cursor tables = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table'"
+                + " AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        while (tables.moveToNext()) {
+            String table = tables.getString(0);
+            Cursor columns = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+            while (columns.moveToNext()) {
+                schema.add(table + "." + columns.getString(columns.getColumnIndex("name"))
+                        + " " + columns.getString(columns.getColumnIndex("type"))
+                        + " notnull=" + columns.getInt(columns.getColumnIndex("notnull"))
+                        + " pk=" + columns.getInt(columns.getColumnIndex("pk")));
+            }
+            columns.close();
+
+            Cursor indexes = db.rawQuery("PRAGMA index_list(" + table + ")", null);
+            while (indexes.moveToNext()) {
+                String index = indexes.getString(indexes.getColumnIndex("name"));
+                StringBuilder description = new StringBuilder(table).append(" index ")
+                        .append(index).append(" unique=")
+                        .append(indexes.getInt(indexes.getColumnIndex("unique"))).append(" on");
+                Cursor indexColumns = db.rawQuery("PRAGMA index_info(" + index + ")", null);
+                while (indexColumns.moveToNext()) {
+                    description.append(' ')
+                            .append(indexColumns.getString(indexColumns.getColumnIndex("name")));
+                }
+                indexColumns.close();
+                schema.add(description.toString());
+            }
+            indexes.close();
+        }
+        tables.close();
+        return schema;
+    }
+
+    public void testConnectionSettings() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            assertEquals("Error: The database doesn't use write-ahead logging", "wal",
+                    DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null).toLowerCase());
+        }
+        // 1 is NORMAL
+        assertEquals(1, DatabaseUtils.longForQuery(db, "PRAGMA synchronous", null));
+        dbHelper.close();
+    }
 }
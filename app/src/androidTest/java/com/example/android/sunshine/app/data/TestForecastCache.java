@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastCache extends AndroidTestCase {
+
+    private static final String[] TODAY_PROJECTION = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    private ForecastCache mCache;
+    private Uri mDayUri;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mCache = ForecastCache.getInstance();
+        mDayUri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+
+        mLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{TestUtilities.createWeatherValues(mLocationRowId)});
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testSecondQueryIsServedFromMemory() {
+        int hits = mCache.getHitCount();
+        int misses = mCache.getMissCount();
+
+        Cursor first = query(TODAY_PROJECTION);
+        assertEquals("Error: The first query should read the database",
+                misses + 1, mCache.getMissCount());
+        assertEquals(hits, mCache.getHitCount());
+
+        // A different projection is answered by the same cached row
+        Cursor second = query(new String[]{
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+                WeatherEntry.COLUMN_DATE,
+                LocationEntry.COLUMN_LOCATION_SETTING
+        });
+        assertEquals("Error: The second query should be served from memory",
+                hits + 1, mCache.getHitCount());
+        assertEquals(misses + 1, mCache.getMissCount());
+
+        assertTrue(first.moveToFirst());
+        assertEquals(321, first.getInt(0));
+        assertEquals("Asteroids", first.getString(1));
+        assertEquals(75.0, first.getDouble(2));
+        assertEquals(65.0, first.getDouble(3));
+        first.close();
+
+        assertTrue(second.moveToFirst());
+        assertEquals(WeatherEntry._ID, second.getColumnName(0));
+        assertEquals(WeatherContract.normalizeDate(TestUtilities.TEST_DATE), second.getLong(1));
+        assertEquals(TestUtilities.TEST_LOCATION, second.getString(2));
+        second.close();
+    }
+
+    public void testCachedRowMatchesDatabase() {
+        query(ForecastCache.COLUMNS).close();
+        Cursor cached = query(ForecastCache.COLUMNS);
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        Cursor stored = WeatherProvider.sWeatherByLocationSettingQueryBuilder.query(
+                dbHelper.getReadableDatabase(),
+                ForecastCache.COLUMNS,
+                WeatherProvider.sLocationSettingAndDaySelection,
+                new String[]{TestUtilities.TEST_LOCATION,
+                        Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))},
+                null,
+                null,
+                null);
+
+        assertTrue(cached.moveToFirst());
+        assertTrue(stored.moveToFirst());
+        assertEquals(stored.getColumnCount(), cached.getColumnCount());
+        for (int i = 0; i < stored.getColumnCount(); i++) {
+            assertEquals(stored.getColumnName(i), cached.getColumnName(i));
+            assertEquals("Error: The cached " + stored.getColumnName(i) + " differs",
+                    stored.getString(i), cached.getString(i));
+        }
+        cached.close();
+        stored.close();
+        dbHelper.close();
+    }
+
+    public void testAllColumnsAreReadFromDatabase() {
+        int hits = mCache.getHitCount();
+        int misses = mCache.getMissCount();
+        Cursor cursor = query(null);
+        assertEquals("Error: A query for all columns shouldn't use the cache", hits,
+                mCache.getHitCount());
+        assertEquals(misses, mCache.getMissCount());
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        Cursor stored = WeatherProvider.sWeatherByLocationSettingQueryBuilder.query(
+                dbHelper.getReadableDatabase(),
+                null,
+                WeatherProvider.sLocationSettingAndDaySelection,
+                new String[]{TestUtilities.TEST_LOCATION,
+                        Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))},
+                null,
+                null,
+                null);
+        assertEquals(stored.getColumnCount(), cursor.getColumnCount());
+        for (int i = 0; i < stored.getColumnCount(); i++) {
+            assertEquals(stored.getColumnName(i), cursor.getColumnName(i));
+        }
+        cursor.close();
+        stored.close();
+        dbHelper.close();
+    }
+
+    public void testWriteInvalidates() {
+        query(TODAY_PROJECTION).close();
+
+        ContentValues updatedValues = TestUtilities.createWeatherValues(mLocationRowId);
+        updatedValues.put(WeatherEntry.COLUMN_MAX_TEMP, 80);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{updatedValues});
+
+        int misses = mCache.getMissCount();
+        Cursor cursor = query(TODAY_PROJECTION);
+        assertEquals("Error: A write should drop the cached row", misses + 1,
+                mCache.getMissCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(80.0, cursor.getDouble(2));
+        cursor.close();
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        cursor = query(TODAY_PROJECTION);
+        assertEquals("Error: A deleted day should not be served from memory", 0,
+                cursor.getCount());
+        cursor.close();
+    }
+
+    public void testUnknownColumnsBypassCache() {
+        int hits = mCache.getHitCount();
+        int misses = mCache.getMissCount();
+
+        Cursor cursor = query(new String[]{"max(" + WeatherEntry.COLUMN_MAX_TEMP + ")"});
+        assertTrue(cursor.moveToFirst());
+        assertEquals(75.0, cursor.getDouble(0));
+        cursor.close();
+
+        assertEquals(hits, mCache.getHitCount());
+        assertEquals(misses, mCache.getMissCount());
+    }
+
+    private Cursor query(String[] projection) {
+        Cursor cursor = mContext.getContentResolver().query(mDayUri, projection, null, null, null);
+        assertNotNull(cursor);
+        return cursor;
+    }
+}
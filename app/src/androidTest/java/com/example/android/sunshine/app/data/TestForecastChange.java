@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Intent;
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestForecastChange extends AndroidTestCase {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    public void testAffects() {
+        long today = TestUtilities.TEST_DATE;
+        ForecastChange change = new ForecastChange(
+                new String[]{TestUtilities.TEST_LOCATION, "10001"},
+                new long[]{today + DAY_MILLIS, today});
+
+        assertTrue(change.affects(TestUtilities.TEST_LOCATION, today + DAY_MILLIS));
+        assertFalse("Error: Only the changed day of a location is affected",
+                change.affects(TestUtilities.TEST_LOCATION, today));
+        assertTrue(change.affects("10001", today));
+        assertFalse(change.affects("94043", today));
+
+        assertTrue(change.affectsFrom(TestUtilities.TEST_LOCATION, today));
+        assertFalse("Error: A change before the start date doesn't affect the days after it",
+                change.affectsFrom("10001", today + DAY_MILLIS));
+
+        assertTrue(ForecastChange.EVERYTHING.affects("94043", today));
+        assertFalse(ForecastChange.NOTHING.affectsFrom("94043", 0));
+    }
+
+    public void testMerge() {
+        long today = TestUtilities.TEST_DATE;
+        ForecastChange first = new ForecastChange(new String[]{"94043"}, new long[]{today});
+        ForecastChange second = new ForecastChange(new String[]{"10001"},
+                new long[]{today + DAY_MILLIS});
+
+        ForecastChange merged = first.merge(second);
+        assertTrue(merged.affects("94043", today));
+        assertTrue(merged.affects("10001", today + DAY_MILLIS));
+        assertFalse(merged.affects("10001", today));
+
+        assertSame(first, first.merge(ForecastChange.NOTHING));
+        assertSame(first, ForecastChange.NOTHING.merge(first));
+        assertTrue(first.merge(ForecastChange.EVERYTHING).isEverything());
+
+        assertTrue(merged.covers(first));
+        assertTrue(merged.covers(second));
+        assertFalse(first.covers(merged));
+        assertTrue(first.covers(ForecastChange.NOTHING));
+        assertFalse(merged.covers(ForecastChange.EVERYTHING));
+        assertTrue(ForecastChange.EVERYTHING.covers(merged));
+    }
+
+    public void testIntentRoundTrip() {
+        long today = TestUtilities.TEST_DATE;
+        ForecastChange change = new ForecastChange(new String[]{"94043"}, new long[]{today});
+
+        ForecastChange read = ForecastChange.fromIntent(change.writeTo(new Intent()));
+        assertFalse(read.isEverything());
+        assertTrue(read.affects("94043", today));
+        assertFalse(read.affects("94043", today + DAY_MILLIS));
+
+        assertTrue(ForecastChange.fromIntent(ForecastChange.NOTHING.writeTo(new Intent()))
+                .isEmpty());
+        assertTrue("Error: A broadcast without a change should affect everything",
+                ForecastChange.fromIntent(new Intent()).isEverything());
+        assertTrue(ForecastChange.fromIntent(
+                ForecastChange.EVERYTHING.writeTo(change.writeTo(new Intent()))).isEverything());
+    }
+
+    public void testDaysNeedLocations() {
+        try {
+            new ForecastChange(new String[]{"94043"}, new long[0]);
+            fail("Error: A day without a location should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
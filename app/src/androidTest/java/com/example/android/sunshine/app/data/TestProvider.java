@@ -512,4 +512,121 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    public void testBulkInsertSkipsUnchangedRows() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        // The same forecast again shouldn't write anything or tell anyone
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+        int writeCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        weatherObserver.waitAndFailOnNotification();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        assertEquals("Error: Unchanged rows were written", 0, writeCount);
+
+        // Only the day that changed should be written
+        ContentValues[] changedValues = createBulkInsertWeatherValues(locationRowId);
+        changedValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+        writeCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, changedValues);
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        assertEquals(1, writeCount);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            TestUtilities.validateCurrentRecord("testBulkInsertSkipsUnchangedRows.  Error validating WeatherEntry " + i,
+                    cursor, changedValues[i]);
+        }
+        cursor.close();
+    }
+
+    public void testChangeNotificationsScopedToChangedDays() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        String locationSetting = testValues.getAsString(LocationEntry.COLUMN_LOCATION_SETTING);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        long changedDate = bulkInsertContentValues[3].getAsLong(WeatherEntry.COLUMN_DATE);
+        long otherDate = bulkInsertContentValues[5].getAsLong(WeatherEntry.COLUMN_DATE);
+
+        // Observers of a single day, like the DetailFragment
+        TestUtilities.TestContentObserver changedDayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(locationSetting, changedDate),
+                true, changedDayObserver);
+        TestUtilities.TestContentObserver otherDayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(locationSetting, otherDate),
+                true, otherDayObserver);
+        // An observer of the whole forecast, like the ForecastFragment
+        TestUtilities.TestContentObserver locationObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(locationSetting), true, locationObserver);
+
+        ContentValues[] changedValues = createBulkInsertWeatherValues(locationRowId);
+        changedValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, changedValues);
+
+        changedDayObserver.waitForNotificationOrFail();
+        locationObserver.waitForNotificationOrFail();
+        otherDayObserver.waitAndFailOnNotification();
+
+        mContext.getContentResolver().unregisterContentObserver(changedDayObserver);
+        mContext.getContentResolver().unregisterContentObserver(otherDayObserver);
+        mContext.getContentResolver().unregisterContentObserver(locationObserver);
+
+        // Deleting the changed day only reaches its own observers as well
+        changedDayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(locationSetting, changedDate),
+                true, changedDayObserver);
+        otherDayObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(locationSetting, otherDate),
+                true, otherDayObserver);
+
+        int rowsDeleted = mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(WeatherContract.normalizeDate(changedDate))});
+        assertEquals(1, rowsDeleted);
+
+        changedDayObserver.waitForNotificationOrFail();
+        otherDayObserver.waitAndFailOnNotification();
+
+        mContext.getContentResolver().unregisterContentObserver(changedDayObserver);
+        mContext.getContentResolver().unregisterContentObserver(otherDayObserver);
+    }
+
+    public void testInsertForecastWithoutExtras() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // ContentResolver.call isn't available
+            return;
+        }
+        try {
+            mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_INSERT_FORECAST, null, null);
+            fail("Error: A call without a forecast batch should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
 }
@@ -158,6 +158,19 @@ public class TestUtilities extends AndroidTestCase {
             }.run();
             mHT.quit();
         }
+
+        public void waitAndFailOnNotification() {
+            // Notifications are delivered asynchronously, so give one the time to show up
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            mHT.quit();
+            if (mContentChanged) {
+                throw new AssertionError("Unexpected change notification");
+            }
+        }
     }
 
     static TestContentObserver getTestContentObserver() {
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+public class TestFanOutRecord extends AndroidTestCase {
+
+    private static final int JULIAN_DAY = 2457000;
+
+    private FanOutRecord mRecord;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRecord = new FanOutRecord(mContext);
+        mRecord.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRecord.clear();
+        super.tearDown();
+    }
+
+    public void testLocationSwitchAndDayRollover() {
+        assertTrue("Error: Without a fan-out everything should be out of date",
+                mRecord.differsFrom("94043", JULIAN_DAY));
+
+        mRecord.put("94043", JULIAN_DAY);
+        assertFalse(mRecord.differsFrom("94043", JULIAN_DAY));
+        assertTrue("Error: Switching the location should need a fan-out",
+                mRecord.differsFrom("10001", JULIAN_DAY));
+        assertTrue("Error: A new day should need a fan-out",
+                mRecord.differsFrom("94043", JULIAN_DAY + 1));
+
+        assertFalse("Error: The record should outlive its instance",
+                new FanOutRecord(mContext).differsFrom("94043", JULIAN_DAY));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/*
+    Counts the objects a full 16 day sync allocates from the downloaded forecast to the stored
+    rows, handing the provider a ForecastBatch compared with one ContentValues per day.
+    Results are written to logcat under this class name, e.g.
+
+        adb logcat -s TestForecastBatchAllocations
+ */
+public class TestForecastBatchAllocations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastBatchAllocations.class.getSimpleName();
+
+    private static final int DAYS = 16;
+    private static final int WARM_UP_ITERATIONS = 5;
+    private static final int ITERATIONS = 50;
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, "94043");
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 37.4056);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -122.0775);
+        mLocationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, locationValues));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testBatchStoresForecast() throws Throwable {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        byte[] body = TestForecastJsonParser.createForecastJson(DAYS).getBytes("UTF-8");
+        ForecastBatch batch = parse(body);
+        assertEquals(DAYS, store(batch));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(DAYS, cursor.getCount());
+        for (int row = 0; cursor.moveToNext(); row++) {
+            ContentValues expected = batch.getContentValues(row);
+            for (String column : expected.keySet()) {
+                int index = cursor.getColumnIndex(column);
+                assertEquals("Error: " + column + " of day " + row + " differs",
+                        expected.getAsString(column), cursor.getString(index));
+            }
+        }
+        cursor.close();
+
+        assertEquals("Error: An unchanged forecast should not be written again", 0, store(batch));
+    }
+
+    public void testAllocationsFor16DaySync() throws Throwable {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        byte[] body = TestForecastJsonParser.createForecastJson(DAYS).getBytes("UTF-8");
+
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            sync(body, false);
+            sync(body, true);
+        }
+
+        Result contentValues = measure(body, false);
+        Result batch = measure(body, true);
+
+        Log.i(LOG_TAG, DAYS + " days, per sync: ContentValues " + contentValues
+                + ", ForecastBatch " + batch);
+        assertTrue("Error: Storing a ForecastBatch should allocate less than ContentValues, "
+                        + batch.allocations + " >= " + contentValues.allocations,
+                batch.allocations < contentValues.allocations);
+    }
+
+    private Result measure(byte[] body, boolean batch) throws Throwable {
+        Result result = new Result();
+        for (int i = 0; i < ITERATIONS; i++) {
+            // Every sync writes all of its rows
+            mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                    null, null);
+            Runtime.getRuntime().gc();
+
+            Debug.resetThreadAllocCount();
+            Debug.resetThreadAllocSize();
+            Debug.startAllocCounting();
+            int written = sync(body, batch);
+            Debug.stopAllocCounting();
+
+            assertEquals(DAYS, written);
+            result.allocations += Debug.getThreadAllocCount();
+            result.allocatedBytes += Debug.getThreadAllocSize();
+        }
+        result.allocations /= ITERATIONS;
+        result.allocatedBytes /= ITERATIONS;
+        return result;
+    }
+
+    /**
+     * Parses and stores the forecast the way storeForecasts does.
+     *
+     * @return the number of rows written
+     */
+    private int sync(byte[] body, boolean batch) throws Throwable {
+        ForecastBatch forecast = parse(body);
+        if (batch) {
+            return store(forecast);
+        }
+        return mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                forecast.toContentValues());
+    }
+
+    private ForecastBatch parse(byte[] body) throws Throwable {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(body));
+        ForecastJsonParser.Forecast forecast =
+                ForecastJsonParser.parse(in, TestForecastJsonParser.JULIAN_START_DAY);
+        assertTrue(forecast.isSuccessful());
+        ForecastBatch rows = new ForecastBatch(DAYS);
+        rows.addAll(forecast.weather, mLocationId);
+        return rows;
+    }
+
+    private int store(ForecastBatch batch) {
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.EXTRA_FORECAST_BATCH, batch);
+        Bundle result = mContext.getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_INSERT_FORECAST, null, extras);
+        return result.getInt(WeatherContract.EXTRA_ROWS_WRITTEN);
+    }
+
+    private static class Result {
+        long allocations;
+        long allocatedBytes;
+
+        @Override
+        public String toString() {
+            return allocations + " allocations, " + allocatedBytes + " bytes";
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Fetches the forecasts of several locations from a local stand-in for OpenWeatherMap that
+    answers slowly, to check that the fetches overlap.
+ */
+public class TestForecastFetcher extends AndroidTestCase {
+
+    private static final long RESPONSE_DELAY_MS = 500;
+
+    private LocalHttpServer mServer;
+    private ForecastFetcher mFetcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getSharedPreferences(HttpValidatorCache.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+        mServer = new LocalHttpServer();
+        mFetcher = new ForecastFetcher(new ForecastHttpClient(new HttpValidatorCache(mContext)),
+                TestForecastJsonParser.JULIAN_START_DAY);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    private List<ForecastFetcher.Request> createRequests(int count) {
+        List<ForecastFetcher.Request> requests = new ArrayList<ForecastFetcher.Request>();
+        for (int i = 0; i < count; i++) {
+            String locationSetting = "location " + i;
+            Uri uri = Uri.parse(mServer.getUrl("/data/2.5/forecast/daily?q=" + i));
+            requests.add(new ForecastFetcher.Request(locationSetting, uri, false));
+        }
+        return requests;
+    }
+
+    public void testFetchesOverlap() throws Throwable {
+        mServer.setDefaultResponse(new LocalHttpServer.MockResponse()
+                .setBody(TestForecastJsonParser.createForecastJson(14))
+                .setDelay(RESPONSE_DELAY_MS));
+
+        int count = ForecastFetcher.MAX_PARALLEL_FETCHES;
+        long start = System.currentTimeMillis();
+        List<ForecastFetcher.Result> results = mFetcher.fetchAll(createRequests(count));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(count, results.size());
+        for (int i = 0; i < count; i++) {
+            ForecastFetcher.Result result = results.get(i);
+            assertEquals("Error: Results are not in the order of the requests",
+                    "location " + i, result.request.locationSetting);
+            assertNull(result.error);
+            assertTrue(result.forecast.isSuccessful());
+            assertEquals(14, result.forecast.weather.size());
+        }
+        assertEquals(count, mServer.getRequestCount());
+        assertTrue("Error: " + count + " slow fetches took " + elapsed + "ms",
+                elapsed < 2 * RESPONSE_DELAY_MS);
+    }
+
+    public void testErrorsStayWithTheirLocation() throws Throwable {
+        // Requests can reach the server in any order, so tell them apart by their path
+        mServer.setDefaultResponse(new LocalHttpServer.MockResponse()
+                .setBody(TestForecastJsonParser.createForecastJson(14)));
+        List<ForecastFetcher.Request> requests = createRequests(3);
+        requests.set(1, new ForecastFetcher.Request("broken",
+                Uri.parse(mServer.getUrl("/missing")), false));
+        requests.set(2, new ForecastFetcher.Request("garbled",
+                Uri.parse(mServer.getUrl("/garbled")), false));
+        mServer.setResponseForPath("/missing",
+                new LocalHttpServer.MockResponse().setStatus(500, "Internal Server Error"));
+        mServer.setResponseForPath("/garbled",
+                new LocalHttpServer.MockResponse().setBody("{\"cod\":\"200\",\"list\":["));
+
+        List<ForecastFetcher.Result> results = mFetcher.fetchAll(requests);
+
+        assertTrue(results.get(0).forecast.isSuccessful());
+        assertTrue(results.get(1).error instanceof IOException);
+        assertTrue(results.get(2).error instanceof JSONException);
+    }
+}
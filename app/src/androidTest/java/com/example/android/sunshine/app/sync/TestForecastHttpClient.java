@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.LocalHttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    Runs the forecast client against a local stand-in for OpenWeatherMap to check that
+    unchanged forecasts are only downloaded once.
+ */
+public class TestForecastHttpClient extends AndroidTestCase {
+
+    private static final String ETAG = "\"f00d\"";
+    private static final String LAST_MODIFIED = "Sat, 20 Dec 2014 00:00:00 GMT";
+    private static final int JULIAN_DAY = TestForecastJsonParser.JULIAN_START_DAY;
+
+    private LocalHttpServer mServer;
+    private ForecastHttpClient mClient;
+    private Uri mForecastUri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getSharedPreferences(HttpValidatorCache.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+        new SyncTransferStats(mContext).reset();
+        mServer = new LocalHttpServer();
+        mClient = new ForecastHttpClient(new HttpValidatorCache(mContext));
+        mForecastUri = Uri.parse(mServer.getUrl("/data/2.5/forecast/daily?q=94043&cnt=14"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    private LocalHttpServer.MockResponse createForecastResponse() {
+        return new LocalHttpServer.MockResponse()
+                .setHeader("ETag", ETAG)
+                .setHeader("Last-Modified", LAST_MODIFIED)
+                .setBody(TestForecastJsonParser.createForecastJson(14));
+    }
+
+    private LocalHttpServer.MockResponse createNotModifiedResponse() {
+        return new LocalHttpServer.MockResponse().setStatus(304, "Not Modified");
+    }
+
+    /*
+        Fetches the forecast, parses it and remembers its validators the way the sync
+        adapter does once the forecast is stored.
+     */
+    private void fetchAndCommit(int julianDay) throws Throwable {
+        ForecastHttpClient.Response response = mClient.get(mForecastUri, julianDay, true);
+        try {
+            assertFalse(response.isNotModified());
+            ForecastJsonParser.Forecast forecast =
+                    ForecastJsonParser.parse(response.getBody(), julianDay);
+            assertTrue(forecast.isSuccessful());
+            response.commit();
+        } finally {
+            response.close();
+        }
+    }
+
+    public void testNotModifiedAfterCommit() throws Throwable {
+        mServer.enqueue(createForecastResponse());
+        fetchAndCommit(JULIAN_DAY);
+
+        LocalHttpServer.RecordedRequest first = mServer.getRequest(0);
+        assertNull("Error: The first request should not be conditional",
+                first.getHeader("If-None-Match"));
+        assertNull(first.getHeader("If-Modified-Since"));
+
+        mServer.enqueue(createNotModifiedResponse());
+        ForecastHttpClient.Response response = mClient.get(mForecastUri, JULIAN_DAY, true);
+        try {
+            assertTrue("Error: The server's 304 was not reported", response.isNotModified());
+        } finally {
+            response.close();
+        }
+
+        LocalHttpServer.RecordedRequest second = mServer.getRequest(1);
+        assertEquals(ETAG, second.getHeader("If-None-Match"));
+        assertEquals(LAST_MODIFIED, second.getHeader("If-Modified-Since"));
+    }
+
+    public void testValidatorsNotKeptWithoutCommit() throws Throwable {
+        mServer.enqueue(createForecastResponse());
+        ForecastHttpClient.Response response = mClient.get(mForecastUri, JULIAN_DAY, true);
+        response.close();
+
+        mServer.enqueue(createForecastResponse());
+        response = mClient.get(mForecastUri, JULIAN_DAY, true);
+        assertFalse(response.isNotModified());
+        response.close();
+
+        assertNull("Error: Validators of a forecast that was never stored were sent",
+                mServer.getRequest(1).getHeader("If-None-Match"));
+    }
+
+    public void testValidatorsNotSentOnAnotherDay() throws Throwable {
+        mServer.enqueue(createForecastResponse());
+        fetchAndCommit(JULIAN_DAY);
+
+        mServer.enqueue(createForecastResponse());
+        fetchAndCommit(JULIAN_DAY + 1);
+
+        assertNull("Error: Validators of yesterday's forecast were sent",
+                mServer.getRequest(1).getHeader("If-None-Match"));
+    }
+
+    public void testUnconditionalRequestDropsValidators() throws Throwable {
+        mServer.enqueue(createForecastResponse());
+        fetchAndCommit(JULIAN_DAY);
+
+        mServer.enqueue(createForecastResponse());
+        ForecastHttpClient.Response response = mClient.get(mForecastUri, JULIAN_DAY, false);
+        response.close();
+
+        mServer.enqueue(createForecastResponse());
+        response = mClient.get(mForecastUri, JULIAN_DAY, true);
+        response.close();
+
+        assertNull(mServer.getRequest(1).getHeader("If-None-Match"));
+        assertNull(mServer.getRequest(2).getHeader("If-None-Match"));
+    }
+
+    private static byte[] gzip(byte[] data) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(data);
+        gzip.close();
+        return bytes.toByteArray();
+    }
+
+    public void testGzipBodyIsDecodedAndCounted() throws Throwable {
+        byte[] json = TestForecastJsonParser.createForecastJson(16).getBytes("UTF-8");
+        byte[] compressed = gzip(json);
+        mServer.enqueue(new LocalHttpServer.MockResponse()
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(compressed));
+
+        ForecastHttpClient.Response response = mClient.get(mForecastUri, JULIAN_DAY, true);
+        try {
+            InputStream body = response.getBody();
+            ForecastJsonParser.Forecast forecast = ForecastJsonParser.parse(body, JULIAN_DAY);
+            assertEquals(16, forecast.weather.size());
+            // Drain what the parser didn't need, e.g. the gzip trailer
+            while (body.read() != -1) {
+            }
+        } finally {
+            response.close();
+        }
+
+        assertEquals("gzip", mServer.getRequest(0).getHeader("Accept-Encoding"));
+        assertEquals(compressed.length, response.getWireBytes());
+        assertEquals(json.length, response.getDecodedBytes());
+    }
+
+    public void testPlainBodyIsCounted() throws Throwable {
+        byte[] json = TestForecastJsonParser.createForecastJson(14).getBytes("UTF-8");
+        mServer.enqueue(new LocalHttpServer.MockResponse().setBody(json));
+
+        ForecastHttpClient.Response response = mClient.get(mForecastUri, JULIAN_DAY, true);
+        try {
+            InputStream body = response.getBody();
+            while (body.read() != -1) {
+            }
+        } finally {
+            response.close();
+        }
+        assertEquals(json.length, response.getWireBytes());
+        assertEquals(json.length, response.getDecodedBytes());
+    }
+
+    public void testTransferStats() {
+        SyncTransferStats stats = new SyncTransferStats(mContext);
+        stats.record(1000, 4000);
+        stats.record(500, 3000);
+
+        // The stats are persisted, a new instance has to see them as well
+        stats = new SyncTransferStats(mContext);
+        assertEquals(2, stats.getSyncCount());
+        assertEquals(500, stats.getLastWireBytes());
+        assertEquals(3000, stats.getLastDecodedBytes());
+        assertEquals(1500, stats.getTotalWireBytes());
+        assertEquals(7000, stats.getTotalDecodedBytes());
+        assertEquals(7000f / 1500f, stats.getTotalCompressionRatio());
+        assertTrue(stats.getLastSyncTime() > 0);
+    }
+}
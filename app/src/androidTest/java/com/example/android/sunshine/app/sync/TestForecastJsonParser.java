@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Locale;
+
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    static final int JULIAN_START_DAY = 2457012;  // December 20th, 2014
+
+    /*
+        Builds a response shaped like the OpenWeatherMap daily forecast, including the fields
+        we don't store so that the parsers have to skip over them.
+     */
+    static String createForecastJson(int numDays) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(numDays)
+                .append(",\"list\":[");
+        for (int i = 0; i < numDays; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,\"night\":8.5,"
+                            + "\"eve\":14.1,\"morn\":9.2},\"pressure\":%.2f,\"humidity\":%d,"
+                            + "\"weather\":[{\"id\":%d,\"main\":\"%s\",\"description\":\"sky is clear\","
+                            + "\"icon\":\"01d\"}],\"speed\":%.2f,\"deg\":%d,\"clouds\":0,\"rain\":0.3}",
+                    1419033600L + i * 86400L,
+                    12.5 + i, 7.25 + i, 17.75 + i,
+                    1013.5 - i, 60 + i,
+                    i % 2 == 0 ? 800 : 501, i % 2 == 0 ? "Clear" : "Rain",
+                    1.5 + 0.25 * i, 10 * i));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    static InputStream toStream(String json) throws Exception {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    public void testStreamingMatchesTreeParser() throws Throwable {
+        for (int numDays : new int[]{14, 16}) {
+            String json = createForecastJson(numDays);
+
+            ForecastJsonParser.Forecast tree = ForecastJsonParser.parse(json, JULIAN_START_DAY);
+            ForecastJsonParser.Forecast streamed =
+                    ForecastJsonParser.parse(toStream(json), JULIAN_START_DAY);
+
+            assertTrue(streamed.isSuccessful());
+            assertEquals("Mountain View", streamed.cityName);
+            assertEquals(tree.cityName, streamed.cityName);
+            assertEquals(tree.cityLatitude, streamed.cityLatitude);
+            assertEquals(tree.cityLongitude, streamed.cityLongitude);
+
+            assertEquals(numDays, streamed.weather.size());
+            assertEquals(tree.weather.size(), streamed.weather.size());
+            for (int i = 0; i < numDays; i++) {
+                assertEquals("Error: day " + i + " differs between the parsers",
+                        tree.weather.getContentValues(i), streamed.weather.getContentValues(i));
+            }
+        }
+    }
+
+    public void testStreamingParsedValues() throws Throwable {
+        ForecastJsonParser.Forecast forecast =
+                ForecastJsonParser.parse(toStream(createForecastJson(14)), JULIAN_START_DAY);
+
+        ContentValues secondDay = forecast.weather.getContentValues(1);
+        assertEquals(501, (int) secondDay.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+        assertEquals("Rain", secondDay.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+        assertEquals(18.75, secondDay.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+        assertEquals(8.25, secondDay.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+        assertEquals(61, (int) secondDay.getAsInteger(WeatherContract.WeatherEntry.COLUMN_HUMIDITY));
+        assertEquals("Error: The parser shouldn't know about the location id",
+                0, forecast.weather.getLocationId(1));
+
+        long firstDate = forecast.weather.getDate(0);
+        long secondDate = secondDay.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        assertEquals(WeatherContract.normalizeDate(firstDate), firstDate);
+        assertEquals(24 * 60 * 60 * 1000L, secondDate - firstDate);
+    }
+
+    public void testStreamingErrorCode() throws Throwable {
+        ForecastJsonParser.Forecast forecast = ForecastJsonParser.parse(
+                toStream("{\"cod\":\"404\",\"message\":\"Error: Not found city\"}"),
+                JULIAN_START_DAY);
+        assertFalse(forecast.isSuccessful());
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, forecast.messageCode);
+    }
+
+    public void testStreamingRejectsIncompleteForecast() throws Throwable {
+        String json = createForecastJson(2).replace("\"humidity\":61,", "");
+        try {
+            ForecastJsonParser.parse(toStream(json), JULIAN_START_DAY);
+            fail("Error: A day without humidity should not be accepted");
+        } catch (JSONException expected) {
+        }
+
+        try {
+            ForecastJsonParser.parse(toStream("{\"cod\":\"200\",\"list\":["), JULIAN_START_DAY);
+            fail("Error: A truncated response should not be accepted");
+        } catch (JSONException expected) {
+        } catch (EOFException expected) {
+        }
+    }
+}
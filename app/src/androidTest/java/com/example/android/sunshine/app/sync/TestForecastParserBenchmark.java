@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/*
+    Compares the streaming forecast parser with the String + JSONObject path the sync adapter
+    used to take. Results are written to logcat under this class name, e.g.
+
+        adb logcat -s TestForecastParserBenchmark
+ */
+public class TestForecastParserBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastParserBenchmark.class.getSimpleName();
+
+    private static final int WARM_UP_ITERATIONS = 20;
+    private static final int ITERATIONS = 200;
+
+    public void testBenchmark14Days() throws Throwable {
+        benchmark(14);
+    }
+
+    public void testBenchmark16Days() throws Throwable {
+        benchmark(16);
+    }
+
+    private void benchmark(int numDays) throws Throwable {
+        byte[] body = TestForecastJsonParser.createForecastJson(numDays).getBytes("UTF-8");
+
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            parseTree(body);
+            parseStreaming(body);
+        }
+
+        Result tree = measure(body, false);
+        Result streaming = measure(body, true);
+
+        Log.i(LOG_TAG, numDays + " days (" + body.length + " bytes), per parse: tree "
+                + tree + ", streaming " + streaming);
+    }
+
+    private Result measure(byte[] body, boolean streaming) throws Throwable {
+        Runtime.getRuntime().gc();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            ForecastJsonParser.Forecast forecast = streaming ? parseStreaming(body) : parseTree(body);
+            assertTrue(forecast.isSuccessful());
+        }
+        long elapsed = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+
+        Result result = new Result();
+        result.micros = elapsed / 1000 / ITERATIONS;
+        result.allocations = Debug.getThreadAllocCount() / ITERATIONS;
+        result.allocatedBytes = Debug.getThreadAllocSize() / ITERATIONS;
+        return result;
+    }
+
+    private static ForecastJsonParser.Forecast parseStreaming(byte[] body) throws Throwable {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(body));
+        return ForecastJsonParser.parse(in, TestForecastJsonParser.JULIAN_START_DAY);
+    }
+
+    private static ForecastJsonParser.Forecast parseTree(byte[] body) throws Throwable {
+        // This is what onPerformSync did before parsing off the stream
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(body)));
+        StringBuffer buffer = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+        return ForecastJsonParser.parse(buffer.toString(), TestForecastJsonParser.JULIAN_START_DAY);
+    }
+
+    private static class Result {
+        long micros;
+        long allocations;
+        long allocatedBytes;
+
+        @Override
+        public String toString() {
+            return micros + "us, " + allocations + " allocations, " + allocatedBytes + " bytes";
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastChange;
+import com.example.android.sunshine.app.data.TodayForecast;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TestSyncDispatcher extends AndroidTestCase {
+
+    private static final int TODAY_WEATHER_ID = 501;
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                Utility.getPreferredLocation(mContext));
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 37.4056);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -122.0775);
+        mLocationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, locationValues));
+
+        insertWeather(System.currentTimeMillis(), TODAY_WEATHER_ID);
+    }
+
+    private void insertWeather(long date, int weatherId) {
+        ContentValues weatherValues = new ContentValues();
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Rain");
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 8.25);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 18.75);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 61);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1013.5);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 3.2);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 270);
+        mContext.getContentResolver().insert(WeatherContract.WeatherEntry.CONTENT_URI,
+                weatherValues);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testConsumersAreToldBeforeDispatchReturns() {
+        RecordingConsumer first = new RecordingConsumer("first");
+        RecordingConsumer second = new RecordingConsumer("second");
+        List<SyncDispatcher.Consumer> consumers = new ArrayList<SyncDispatcher.Consumer>();
+        consumers.add(first);
+        consumers.add(second);
+        SyncDispatcher dispatcher = new SyncDispatcher(mContext, 0, consumers);
+
+        dispatcher.dispatch();
+        assertEquals("Error: The consumers should be told before dispatch returns", 1,
+                dispatcher.getFanOutCount());
+        assertEquals(1, first.calls);
+        assertEquals(1, second.calls);
+
+        assertNotNull(first.today);
+        assertEquals(TODAY_WEATHER_ID, first.today.weatherId);
+        assertSame("Error: Every consumer should get the same snapshot",
+                first.today, second.today);
+
+        assertEquals(1, dispatcher.getLatency("first").count);
+        assertEquals(1, dispatcher.getLatency("second").count);
+        assertNull(dispatcher.getLatency("unknown"));
+
+        dispatcher.dispatch();
+        assertEquals(2, dispatcher.getFanOutCount());
+        assertEquals(2, second.calls);
+    }
+
+    public void testChangeIsHandedOn() {
+        RecordingConsumer consumer = new RecordingConsumer("consumer");
+        List<SyncDispatcher.Consumer> consumers = new ArrayList<SyncDispatcher.Consumer>();
+        consumers.add(consumer);
+        SyncDispatcher dispatcher = new SyncDispatcher(mContext, 0, consumers);
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long tomorrow = today + TimeUnit.DAYS.toMillis(1);
+        dispatcher.dispatch(new ForecastChange(new String[]{"94043", "10001"},
+                new long[]{today, tomorrow}));
+        assertFalse(consumer.change.isEverything());
+        assertTrue(consumer.change.affects("94043", today));
+        assertTrue(consumer.change.affects("10001", tomorrow));
+        assertFalse(consumer.change.affects("94043", tomorrow));
+
+        dispatcher.dispatch(ForecastChange.NOTHING);
+        assertTrue(consumer.change.isEmpty());
+
+        dispatcher.dispatch();
+        assertTrue(consumer.change.isEverything());
+    }
+
+    public void testBackToBackDispatchesAreCoalesced() {
+        RecordingConsumer first = new RecordingConsumer("first");
+        RecordingConsumer second = new RecordingConsumer("second");
+        List<SyncDispatcher.Consumer> consumers = new ArrayList<SyncDispatcher.Consumer>();
+        consumers.add(first);
+        consumers.add(second);
+        SyncDispatcher dispatcher = new SyncDispatcher(mContext,
+                TimeUnit.MINUTES.toMillis(1), consumers);
+
+        dispatcher.dispatch();
+        dispatcher.dispatch();
+        assertEquals("Error: Each consumer should be told once", 1, first.calls);
+        assertEquals(1, second.calls);
+        assertEquals(1, dispatcher.getFanOutCount());
+        assertEquals(1, dispatcher.getCoalescedCount());
+
+        // A day nobody was told about yet still goes out, and is merged into the window
+        long tomorrow = WeatherContract.normalizeDate(System.currentTimeMillis())
+                + TimeUnit.DAYS.toMillis(1);
+        ForecastChange change = new ForecastChange(new String[]{"94043"}, new long[]{tomorrow});
+        dispatcher = new SyncDispatcher(mContext, TimeUnit.MINUTES.toMillis(1), consumers);
+        dispatcher.dispatch(ForecastChange.NOTHING);
+        dispatcher.dispatch(change);
+        dispatcher.dispatch(change);
+        assertEquals(3, first.calls);
+        assertSame(change, first.change);
+        assertEquals(1, dispatcher.getCoalescedCount());
+    }
+
+    public void testTodayFallsBackToNextStoredDay() {
+        RecordingConsumer consumer = new RecordingConsumer("consumer");
+        List<SyncDispatcher.Consumer> consumers = new ArrayList<SyncDispatcher.Consumer>();
+        consumers.add(consumer);
+        SyncDispatcher dispatcher = new SyncDispatcher(mContext, 0, consumers);
+
+        long tomorrow = WeatherContract.normalizeDate(System.currentTimeMillis())
+                + TimeUnit.DAYS.toMillis(1);
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        insertWeather(tomorrow + TimeUnit.DAYS.toMillis(1), 800);
+        insertWeather(tomorrow, 600);
+
+        dispatcher.dispatch();
+        assertNotNull("Error: Without today the next stored day should be handed out",
+                consumer.today);
+        assertEquals(tomorrow, consumer.today.date);
+        assertEquals(600, consumer.today.weatherId);
+        assertTrue(consumer.today.isCurrent(mContext));
+    }
+
+    public void testFailingConsumerDoesNotStopOthers() {
+        RecordingConsumer after = new RecordingConsumer("after");
+        List<SyncDispatcher.Consumer> consumers = new ArrayList<SyncDispatcher.Consumer>();
+        consumers.add(new SyncDispatcher.Consumer() {
+            @Override
+            public String getName() {
+                return "failing";
+            }
+
+            @Override
+            public void onDataUpdated(Context context, TodayForecast today, ForecastChange change) {
+                throw new IllegalStateException("Failing on purpose");
+            }
+        });
+        consumers.add(after);
+        SyncDispatcher dispatcher = new SyncDispatcher(mContext, 0, consumers);
+
+        dispatcher.dispatch();
+        assertEquals("Error: A failing consumer kept the next one from being told", 1,
+                after.calls);
+        assertEquals(1, dispatcher.getLatency("failing").count);
+    }
+
+    private static class RecordingConsumer implements SyncDispatcher.Consumer {
+        final String name;
+        int calls;
+        TodayForecast today;
+        ForecastChange change;
+
+        RecordingConsumer(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void onDataUpdated(Context context, TodayForecast today, ForecastChange change) {
+            this.today = today;
+            this.change = change;
+            calls++;
+        }
+    }
+}
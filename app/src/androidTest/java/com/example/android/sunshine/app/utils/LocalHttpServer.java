@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A tiny HTTP/1.1 server on the loopback interface that answers with canned responses, so that
+ * the network code can be tested without talking to OpenWeatherMap.
+ *
+ * Responses are served in the order they were enqueued. Every connection is closed after its
+ * response, which keeps HttpURLConnection from pooling it.
+ */
+public class LocalHttpServer {
+
+    public static class MockResponse {
+        int mCode = 200;
+        String mReason = "OK";
+        final Map<String, String> mHeaders = new LinkedHashMap<String, String>();
+        byte[] mBody = new byte[0];
+        long mDelayMs;
+
+        public MockResponse setStatus(int code, String reason) {
+            mCode = code;
+            mReason = reason;
+            return this;
+        }
+
+        public MockResponse setHeader(String name, String value) {
+            mHeaders.put(name, value);
+            return this;
+        }
+
+        public MockResponse setBody(byte[] body) {
+            mBody = body;
+            return this;
+        }
+
+        public MockResponse setBody(String body) {
+            try {
+                return setBody(body.getBytes("UTF-8"));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        /**
+         * Waits before answering, to simulate a slow link.
+         */
+        public MockResponse setDelay(long delayMs) {
+            mDelayMs = delayMs;
+            return this;
+        }
+    }
+
+    public static class RecordedRequest {
+        public final String requestLine;
+        public final String path;
+        // Header names are stored in lower case
+        public final Map<String, String> headers;
+
+        RecordedRequest(String requestLine, Map<String, String> headers) {
+            this.requestLine = requestLine;
+            String[] parts = requestLine.split(" ");
+            this.path = parts.length > 1 ? parts[1] : "";
+            this.headers = headers;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+    }
+
+    private final ServerSocket mServerSocket;
+    private final BlockingQueue<MockResponse> mResponses = new LinkedBlockingQueue<MockResponse>();
+    private final List<RecordedRequest> mRequests =
+            Collections.synchronizedList(new ArrayList<RecordedRequest>());
+    private final Map<String, MockResponse> mPathResponses =
+            Collections.synchronizedMap(new HashMap<String, MockResponse>());
+    private volatile MockResponse mDefaultResponse;
+    private volatile boolean mRunning = true;
+
+    public LocalHttpServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "LocalHttpServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public String getUrl(String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    public void enqueue(MockResponse response) {
+        mResponses.add(response);
+    }
+
+    /**
+     * Used once the queue of responses is empty.
+     */
+    public void setDefaultResponse(MockResponse response) {
+        mDefaultResponse = response;
+    }
+
+    /**
+     * Always answers requests for the given path, query included, with the given response.
+     * Useful when requests arrive in parallel and their order isn't known.
+     */
+    public void setResponseForPath(String path, MockResponse response) {
+        mPathResponses.put(path, response);
+    }
+
+    public int getRequestCount() {
+        return mRequests.size();
+    }
+
+    public RecordedRequest getRequest(int index) {
+        return mRequests.get(index);
+    }
+
+    public void shutdown() {
+        mRunning = false;
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            // Nothing left to clean up
+        }
+    }
+
+    private void acceptConnections() {
+        while (mRunning) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            // Each connection gets its own thread, so slow responses overlap like on a real server
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            }, "LocalHttpServer connection").start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            String requestLine = reader.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            Map<String, String> headers = new HashMap<String, String>();
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                            line.substring(colon + 1).trim());
+                }
+            }
+            RecordedRequest request = new RecordedRequest(requestLine, headers);
+            mRequests.add(request);
+
+            MockResponse response = mPathResponses.get(request.path);
+            if (response == null) {
+                // Only wait for a test to enqueue a response if there is nothing to fall back to
+                response = mDefaultResponse != null
+                        ? mResponses.poll()
+                        : mResponses.poll(5, TimeUnit.SECONDS);
+            }
+            if (response == null) {
+                response = mDefaultResponse != null ? mDefaultResponse
+                        : new MockResponse().setStatus(404, "Not Found");
+            }
+            if (response.mDelayMs > 0) {
+                Thread.sleep(response.mDelayMs);
+            }
+
+            StringBuilder head = new StringBuilder();
+            head.append("HTTP/1.1 ").append(response.mCode).append(' ')
+                    .append(response.mReason).append("\r\n");
+            for (Map.Entry<String, String> header : response.mHeaders.entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+            // 304 responses never carry a body
+            boolean hasBody = response.mCode != 304;
+            if (hasBody) {
+                head.append("Content-Length: ").append(response.mBody.length).append("\r\n");
+            }
+            head.append("Connection: close\r\n\r\n");
+
+            OutputStream out = socket.getOutputStream();
+            out.write(head.toString().getBytes("ISO-8859-1"));
+            if (hasBody) {
+                out.write(response.mBody);
+            }
+            out.flush();
+        } catch (IOException | InterruptedException e) {
+            // The client went away, nothing to do
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+}
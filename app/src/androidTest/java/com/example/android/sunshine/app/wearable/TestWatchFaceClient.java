@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearable;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.TodayForecast;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TestWatchFaceClient extends AndroidTestCase {
+
+    private static final long NEVER_IDLE = 60 * 60 * 1000;
+    private static final int SYNCS = 10;
+
+    public void testSyncsShareOneConnection() {
+        FakeTransport transport = new FakeTransport();
+        WatchFaceClient client = new WatchFaceClient(mContext, transport, NEVER_IDLE);
+
+        // Syncs finishing while the client is still connecting
+        for (int i = 0; i < SYNCS; i++) {
+            client.publish(createForecast(i));
+        }
+        assertEquals("Error: Every sync should share one connection", 1, transport.connects);
+        assertEquals(0, transport.sent.size());
+
+        transport.completeConnection();
+        assertEquals("Error: Only the newest pending weather should be kept",
+                WatchFaceClient.MAX_PENDING, transport.sent.size());
+        assertEquals(Utility.formatTemperature(mContext, SYNCS - 1),
+                getMaxTemp(transport.sent.get(transport.sent.size() - 1)));
+
+        // Syncs once connected go straight out
+        for (int i = 0; i < SYNCS; i++) {
+            client.publish(createForecast(i));
+        }
+        assertEquals(1, transport.connects);
+        assertEquals(WatchFaceClient.MAX_PENDING + SYNCS, transport.sent.size());
+
+        client.shutdown();
+        assertEquals("Error: The connection leaked", transport.connects, transport.disconnects);
+        assertFalse(transport.isConnected());
+
+        client.publish(createForecast(0));
+        assertEquals("Error: A shut down client should not connect again", 1, transport.connects);
+    }
+
+    public void testIdleConnectionIsReleased() throws Throwable {
+        FakeTransport transport = new FakeTransport();
+        WatchFaceClient client = new WatchFaceClient(mContext, transport, 100);
+
+        client.publish(createForecast(0));
+        transport.completeConnection();
+        Thread.sleep(500);
+        assertEquals("Error: An idle connection should be dropped", 1, transport.disconnects);
+
+        // The next sync reconnects the same transport
+        client.publish(createForecast(1));
+        assertEquals(2, transport.connects);
+        transport.completeConnection();
+        assertEquals(2, transport.sent.size());
+
+        client.shutdown();
+        assertEquals(transport.connects, transport.disconnects);
+    }
+
+    public void testFailedConnectionIsRetried() {
+        FakeTransport transport = new FakeTransport();
+        WatchFaceClient client = new WatchFaceClient(mContext, transport, NEVER_IDLE);
+
+        client.publish(createForecast(0));
+        transport.failConnection();
+        client.publish(createForecast(1));
+        assertEquals(2, transport.connects);
+
+        transport.completeConnection();
+        assertEquals("Error: Weather queued before the failure should have been dropped",
+                1, transport.sent.size());
+        client.shutdown();
+    }
+
+    public void testUnchangedWeatherSendsSameItem() {
+        FakeTransport transport = new FakeTransport();
+        WatchFaceClient client = new WatchFaceClient(mContext, transport, NEVER_IDLE);
+        client.publish(createForecast(20));
+        transport.completeConnection();
+        client.publish(createForecast(20));
+        // Another weather id of the same condition
+        client.publish(new TodayForecast("94043", 0, 500, "Light rain", 20, 0));
+        client.publish(new TodayForecast("94043", 0, 501, "Moderate rain", 20, 0));
+        client.shutdown();
+
+        PutDataRequest first = transport.sent.get(0);
+        PutDataRequest second = transport.sent.get(1);
+        assertTrue("Error: The same weather should make the same data item",
+                Arrays.equals(first.getData(), second.getData()));
+        assertSame("Error: The icon should be encoded once",
+                first.getAsset(WatchFaceClient.KEY_WEATHER_ICON),
+                second.getAsset(WatchFaceClient.KEY_WEATHER_ICON));
+
+        PutDataRequest lightRain = transport.sent.get(2);
+        PutDataRequest moderateRain = transport.sent.get(3);
+        assertSame(lightRain.getAsset(WatchFaceClient.KEY_WEATHER_ICON),
+                moderateRain.getAsset(WatchFaceClient.KEY_WEATHER_ICON));
+        assertEquals("art_rain", DataMap.fromByteArray(lightRain.getData())
+                .getString(WatchFaceClient.KEY_WEATHER_ICON_ID));
+        assertNotSame(first.getAsset(WatchFaceClient.KEY_WEATHER_ICON),
+                lightRain.getAsset(WatchFaceClient.KEY_WEATHER_ICON));
+    }
+
+    public void testUnknownWeatherHasNoIcon() {
+        FakeTransport transport = new FakeTransport();
+        WatchFaceClient client = new WatchFaceClient(mContext, transport, NEVER_IDLE);
+        client.publish(new TodayForecast("94043", 0, 0, "Unknown", 20, 0));
+        transport.completeConnection();
+        client.shutdown();
+
+        PutDataRequest request = transport.sent.get(0);
+        assertFalse(request.hasAsset(WatchFaceClient.KEY_WEATHER_ICON));
+        assertEquals(Utility.formatTemperature(mContext, 20), getMaxTemp(request));
+    }
+
+    private static TodayForecast createForecast(int maxTemp) {
+        return new TodayForecast("94043", 0, 800, "Clear", maxTemp, 0);
+    }
+
+    private static String getMaxTemp(PutDataRequest request) {
+        return DataMap.fromByteArray(request.getData()).getString(WatchFaceClient.KEY_MAX_TEMP);
+    }
+
+    /**
+     * Connects only when told to, and counts what the client asks of it.
+     */
+    private static class FakeTransport implements WearableTransport {
+        final List<PutDataRequest> sent = new ArrayList<PutDataRequest>();
+        volatile int connects;
+        volatile int disconnects;
+        private Callbacks mCallbacks;
+        private volatile boolean mConnecting;
+        private volatile boolean mConnected;
+
+        void completeConnection() {
+            mConnecting = false;
+            mConnected = true;
+            mCallbacks.onConnected();
+        }
+
+        void failConnection() {
+            mConnecting = false;
+            mCallbacks.onConnectionFailed();
+        }
+
+        @Override
+        public void setCallbacks(Callbacks callbacks) {
+            mCallbacks = callbacks;
+        }
+
+        @Override
+        public void connect() {
+            assertFalse("Error: Already connected", mConnected || mConnecting);
+            connects++;
+            mConnecting = true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mConnected;
+        }
+
+        @Override
+        public boolean isConnecting() {
+            return mConnecting;
+        }
+
+        @Override
+        public void putDataItem(PutDataRequest request) {
+            assertTrue("Error: Sending while not connected", mConnected);
+            sent.add(request);
+        }
+
+        @Override
+        public void disconnect() {
+            if (mConnected || mConnecting) {
+                disconnects++;
+            }
+            mConnected = false;
+            mConnecting = false;
+        }
+    }
+}
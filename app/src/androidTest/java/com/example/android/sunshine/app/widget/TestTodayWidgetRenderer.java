@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.ForecastChange;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestTodayWidgetRenderer extends AndroidTestCase {
+
+    // Not a widget that exists, so nothing but the renderer knows about it
+    private static final int APP_WIDGET_ID = 424242;
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    // A normalized date, midnight UTC
+    private static final long TODAY = 1419033600000L;
+
+    private TodayWidgetRenderer mRenderer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new TodayWidgetRenderer(mContext);
+    }
+
+    public void testLayoutFollowsWidth() {
+        int defaultWidth = mContext.getResources()
+                .getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = mContext.getResources()
+                .getDimensionPixelSize(R.dimen.widget_today_large_width);
+
+        assertEquals(R.layout.widget_today_small, mRenderer.getLayoutId(defaultWidth - 1));
+        assertEquals(R.layout.widget_today, mRenderer.getLayoutId(defaultWidth));
+        assertEquals(R.layout.widget_today, mRenderer.getLayoutId(largeWidth - 1));
+        assertEquals(R.layout.widget_today_large, mRenderer.getLayoutId(largeWidth));
+    }
+
+    public void testLayoutIsKeptFromOptions() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // Widgets can't be resized, so there are no options
+            return;
+        }
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(mContext);
+
+        mRenderer.setOptions(APP_WIDGET_ID, createOptions(1000));
+        assertEquals("Error: The layout should be decided when the options change",
+                R.layout.widget_today_large,
+                mRenderer.getLayoutId(appWidgetManager, APP_WIDGET_ID));
+
+        mRenderer.setOptions(APP_WIDGET_ID, createOptions(1));
+        assertEquals(R.layout.widget_today_small,
+                mRenderer.getLayoutId(appWidgetManager, APP_WIDGET_ID));
+
+        mRenderer.forget(new int[]{APP_WIDGET_ID});
+        mRenderer.setOptions(APP_WIDGET_ID, new Bundle());
+        assertEquals("Error: Without a width the default layout should be used",
+                R.layout.widget_today, mRenderer.getLayoutId(appWidgetManager, APP_WIDGET_ID));
+    }
+
+    public void testUpdateIsSkippedOnlyForTheSameDayAndLocation() {
+        ForecastChange tomorrowChanged = new ForecastChange(new String[]{"94043"},
+                new long[]{TODAY + DAY_MILLIS});
+        assertTrue("Error: Widgets never rendered should be updated",
+                mRenderer.needsUpdate("94043", TODAY, true, ForecastChange.NOTHING));
+
+        mRenderer.setRendered("94043", TODAY, true, TODAY);
+        assertFalse("Error: A change of another day shouldn't update the widgets",
+                mRenderer.needsUpdate("94043", TODAY, true, tomorrowChanged));
+        assertTrue(mRenderer.needsUpdate("94043", TODAY, true,
+                new ForecastChange(new String[]{"94043"}, new long[]{TODAY})));
+
+        // The day rolled over, the widgets still show yesterday
+        assertTrue("Error: The widgets should be updated on a new day",
+                mRenderer.needsUpdate("94043", TODAY + DAY_MILLIS, true, ForecastChange.NOTHING));
+        // The location was switched to one whose forecast is current already
+        assertTrue("Error: The widgets should be updated for another location",
+                mRenderer.needsUpdate("10001", TODAY, true, ForecastChange.NOTHING));
+        assertTrue("Error: The widgets should be updated for other units",
+                mRenderer.needsUpdate("94043", TODAY, false, ForecastChange.NOTHING));
+
+        // Without today's weather the next stored day is shown, so later days matter
+        mRenderer.setRendered("94043", TODAY, true, TODAY + DAY_MILLIS);
+        assertTrue(mRenderer.needsUpdate("94043", TODAY, true, tomorrowChanged));
+        assertFalse(mRenderer.needsUpdate("94043", TODAY, true, ForecastChange.NOTHING));
+    }
+
+    private static Bundle createOptions(int minWidthDp) {
+        Bundle options = new Bundle();
+        options.putInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH, minWidthDp);
+        return options;
+    }
+}
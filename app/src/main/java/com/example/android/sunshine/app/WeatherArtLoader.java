@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Loads the weather art shown outside of the app, in notifications and widgets, at the pixel
+ * size of the slot it is shown in. Everything in there goes through binder to another process,
+ * so a bitmap any larger than its slot costs a bigger transaction and the other process's
+ * memory for nothing.
+ *
+ * Art is kept by url and size, so the same image in the same slot is only loaded once. There
+ * is one loader per process. It blocks while loading, so it must not be used on the main
+ * thread.
+ */
+public class WeatherArtLoader {
+    private static final String LOG_TAG = WeatherArtLoader.class.getSimpleName();
+
+    /**
+     * The large icon of the weather notification.
+     */
+    public static final int SLOT_NOTIFICATION_LARGE_ICON = 0;
+    /**
+     * The icon of a row in the detail widget.
+     */
+    public static final int SLOT_WIDGET_LIST_ICON = 1;
+
+    // Every condition in every slot a couple of times over
+    private static final int MAX_BYTES = 2 * 1024 * 1024;
+
+    private static WeatherArtLoader sInstance;
+
+    private final Context mContext;
+    private final int[] mSlotWidths = new int[2];
+    private final int[] mSlotHeights = new int[2];
+    private final LruCache<String, Bitmap> mArt = new LruCache<String, Bitmap>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+
+    public static synchronized WeatherArtLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherArtLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @SuppressLint("InlinedApi")
+    WeatherArtLoader(Context context) {
+        mContext = context;
+        Resources resources = context.getResources();
+
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        boolean honeycomb = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+        mSlotWidths[SLOT_NOTIFICATION_LARGE_ICON] = honeycomb
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        mSlotHeights[SLOT_NOTIFICATION_LARGE_ICON] = honeycomb
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+
+        int listIconSize = resources.getDimensionPixelSize(R.dimen.list_icon);
+        mSlotWidths[SLOT_WIDGET_LIST_ICON] = listIconSize;
+        mSlotHeights[SLOT_WIDGET_LIST_ICON] = listIconSize;
+    }
+
+    /**
+     * @return how wide art in the slot is drawn, in pixels
+     */
+    public int getWidth(int slot) {
+        return mSlotWidths[slot];
+    }
+
+    /**
+     * @return how tall art in the slot is drawn, in pixels
+     */
+    public int getHeight(int slot) {
+        return mSlotHeights[slot];
+    }
+
+    /**
+     * Loads the art at the url for the slot, or the local art if it can't be loaded.
+     *
+     * @return the art, or null if neither could be loaded
+     */
+    public Bitmap load(int slot, String url, int artResourceId) {
+        int width = getWidth(slot);
+        int height = getHeight(slot);
+        Bitmap art = null;
+        if (url != null) {
+            art = loadAll(width, height, Collections.singleton(url)).get(url);
+        }
+        if (art == null && artResourceId != -1) {
+            art = loadResource(artResourceId, width, height);
+        }
+        return art;
+    }
+
+    /**
+     * Loads the art at every url for the slot. Everything not kept yet is asked for before
+     * waiting for any of it, so it's fetched side by side instead of one after the other.
+     *
+     * @return the art by url, without the urls that couldn't be loaded
+     */
+    public Map<String, Bitmap> loadAll(int slot, Collection<String> urls) {
+        return loadAll(getWidth(slot), getHeight(slot), urls);
+    }
+
+    Map<String, Bitmap> loadAll(int width, int height, Collection<String> urls) {
+        Map<String, Bitmap> art = new HashMap<String, Bitmap>();
+        Map<String, FutureTarget<Bitmap>> requests = new LinkedHashMap<String, FutureTarget<Bitmap>>();
+        for (String url : urls) {
+            if (url == null || art.containsKey(url) || requests.containsKey(url)) {
+                continue;
+            }
+            Bitmap kept = mArt.get(getKey(url, width, height));
+            if (kept != null) {
+                art.put(url, kept);
+                continue;
+            }
+            // The targets of loaded art are never cleared, so Glide doesn't reuse the bitmaps
+            // kept here
+            requests.put(url, Glide.with(mContext)
+                    .load(url)
+                    .asBitmap()
+                    .fitCenter()
+                    .into(width, height));
+        }
+
+        Iterator<Map.Entry<String, FutureTarget<Bitmap>>> pending = requests.entrySet().iterator();
+        while (pending.hasNext()) {
+            Map.Entry<String, FutureTarget<Bitmap>> request = pending.next();
+            String url = request.getKey();
+            try {
+                Bitmap loaded = request.getValue().get();
+                mArt.put(getKey(url, width, height), loaded);
+                art.put(url, loaded);
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Error retrieving weather art from " + url, e);
+            } catch (InterruptedException e) {
+                // Whoever interrupted us doesn't want to wait any longer, so neither do we. The
+                // requests not waited for yet are of no use anymore and are cancelled.
+                Thread.currentThread().interrupt();
+                request.getValue().cancel(true);
+                while (pending.hasNext()) {
+                    pending.next().getValue().cancel(true);
+                }
+                break;
+            }
+        }
+        return art;
+    }
+
+    /**
+     * Decodes local art no larger than needed and scales it to fit the size.
+     */
+    private Bitmap loadResource(int artResourceId, int width, int height) {
+        String key = getKey("resource:" + artResourceId, width, height);
+        Bitmap art = mArt.get(key);
+        if (art != null) {
+            return art;
+        }
+
+        Resources resources = mContext.getResources();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, artResourceId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= width
+                && options.outHeight / (options.inSampleSize * 2) >= height) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap sampled = BitmapFactory.decodeResource(resources, artResourceId, options);
+        if (sampled == null) {
+            return null;
+        }
+
+        float scale = Math.min((float) width / sampled.getWidth(), (float) height / sampled.getHeight());
+        art = Bitmap.createScaledBitmap(sampled,
+                Math.max(1, Math.round(sampled.getWidth() * scale)),
+                Math.max(1, Math.round(sampled.getHeight() * scale)), true);
+        if (art != sampled) {
+            sampled.recycle();
+        }
+        mArt.put(key, art);
+        return art;
+    }
+
+    private static String getKey(String url, int width, int height) {
+        return url + "@" + width + "x" + height;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.Arrays;
+
+/**
+ * Weather rows kept column by column in primitive arrays, the way the sync hands a forecast
+ * to the provider. Unlike one ContentValues per row, adding a day boxes nothing and creates
+ * no maps, and the provider binds the values straight to its insert statement.
+ *
+ * Dates have to be normalized, see {@link WeatherContract#normalizeDate(long)}. A batch
+ * isn't thread safe.
+ */
+public class ForecastBatch implements Parcelable {
+
+    private int mSize;
+    private long[] mLocationIds;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private String[] mDescriptions;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private double[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    /**
+     * @param capacity the number of rows the batch will probably hold, it grows if needed
+     */
+    public ForecastBatch(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    private void allocate(int capacity) {
+        mLocationIds = new long[capacity];
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mDescriptions = new String[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mDates.length) {
+            return;
+        }
+        capacity = Math.max(capacity, mDates.length * 2);
+        mLocationIds = Arrays.copyOf(mLocationIds, capacity);
+        mDates = Arrays.copyOf(mDates, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mDescriptions = Arrays.copyOf(mDescriptions, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+
+    /**
+     * Adds the weather of one day.
+     *
+     * @param description the short description. Forecasts repeat a handful of these, so they
+     *                    are interned rather than kept once per day.
+     */
+    public void add(long locationId, long date, int weatherId, String description,
+                    double minTemp, double maxTemp, double humidity, double pressure,
+                    double windSpeed, double degrees) {
+        ensureCapacity(mSize + 1);
+        int row = mSize++;
+        mLocationIds[row] = locationId;
+        mDates[row] = date;
+        mWeatherIds[row] = weatherId;
+        mDescriptions[row] = description == null ? null : description.intern();
+        mMinTemps[row] = minTemp;
+        mMaxTemps[row] = maxTemp;
+        mHumidities[row] = humidity;
+        mPressures[row] = pressure;
+        mWindSpeeds[row] = windSpeed;
+        mDegrees[row] = degrees;
+    }
+
+    /**
+     * Appends all rows of another batch for the given location.
+     */
+    public void addAll(ForecastBatch other, long locationId) {
+        ensureCapacity(mSize + other.mSize);
+        int start = mSize;
+        int count = other.mSize;
+        Arrays.fill(mLocationIds, start, start + count, locationId);
+        System.arraycopy(other.mDates, 0, mDates, start, count);
+        System.arraycopy(other.mWeatherIds, 0, mWeatherIds, start, count);
+        System.arraycopy(other.mDescriptions, 0, mDescriptions, start, count);
+        System.arraycopy(other.mMinTemps, 0, mMinTemps, start, count);
+        System.arraycopy(other.mMaxTemps, 0, mMaxTemps, start, count);
+        System.arraycopy(other.mHumidities, 0, mHumidities, start, count);
+        System.arraycopy(other.mPressures, 0, mPressures, start, count);
+        System.arraycopy(other.mWindSpeeds, 0, mWindSpeeds, start, count);
+        System.arraycopy(other.mDegrees, 0, mDegrees, start, count);
+        mSize += count;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getLocationId(int row) {
+        return mLocationIds[row];
+    }
+
+    public long getDate(int row) {
+        return mDates[row];
+    }
+
+    public int getWeatherId(int row) {
+        return mWeatherIds[row];
+    }
+
+    public String getDescription(int row) {
+        return mDescriptions[row];
+    }
+
+    public double getMinTemp(int row) {
+        return mMinTemps[row];
+    }
+
+    public double getMaxTemp(int row) {
+        return mMaxTemps[row];
+    }
+
+    public double getHumidity(int row) {
+        return mHumidities[row];
+    }
+
+    public double getPressure(int row) {
+        return mPressures[row];
+    }
+
+    public double getWindSpeed(int row) {
+        return mWindSpeeds[row];
+    }
+
+    public double getDegrees(int row) {
+        return mDegrees[row];
+    }
+
+    /**
+     * @return the row as values for the weather table, for callers that need ContentValues
+     */
+    public ContentValues getContentValues(int row) {
+        ContentValues weatherValues = new ContentValues();
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, mLocationIds[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, mDates[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, mHumidities[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, mPressures[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, mDegrees[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, mDescriptions[row]);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[row]);
+        return weatherValues;
+    }
+
+    public ContentValues[] toContentValues() {
+        ContentValues[] values = new ContentValues[mSize];
+        for (int row = 0; row < mSize; row++) {
+            values[row] = getContentValues(row);
+        }
+        return values;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mSize);
+        dest.writeLongArray(Arrays.copyOf(mLocationIds, mSize));
+        dest.writeLongArray(Arrays.copyOf(mDates, mSize));
+        dest.writeIntArray(Arrays.copyOf(mWeatherIds, mSize));
+        dest.writeStringArray(Arrays.copyOf(mDescriptions, mSize));
+        dest.writeDoubleArray(Arrays.copyOf(mMinTemps, mSize));
+        dest.writeDoubleArray(Arrays.copyOf(mMaxTemps, mSize));
+        dest.writeDoubleArray(Arrays.copyOf(mHumidities, mSize));
+        dest.writeDoubleArray(Arrays.copyOf(mPressures, mSize));
+        dest.writeDoubleArray(Arrays.copyOf(mWindSpeeds, mSize));
+        dest.writeDoubleArray(Arrays.copyOf(mDegrees, mSize));
+    }
+
+    private ForecastBatch(Parcel in) {
+        mSize = in.readInt();
+        mLocationIds = in.createLongArray();
+        mDates = in.createLongArray();
+        mWeatherIds = in.createIntArray();
+        mDescriptions = in.createStringArray();
+        mMinTemps = in.createDoubleArray();
+        mMaxTemps = in.createDoubleArray();
+        mHumidities = in.createDoubleArray();
+        mPressures = in.createDoubleArray();
+        mWindSpeeds = in.createDoubleArray();
+        mDegrees = in.createDoubleArray();
+        if (mSize == 0) {
+            // Keep room to grow from
+            allocate(1);
+        }
+    }
+
+    public static final Creator<ForecastBatch> CREATOR = new Creator<ForecastBatch>() {
+        @Override
+        public ForecastBatch createFromParcel(Parcel in) {
+            return new ForecastBatch(in);
+        }
+
+        @Override
+        public ForecastBatch[] newArray(int size) {
+            return new ForecastBatch[size];
+        }
+    };
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.support.v4.util.LruCache;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * The weather of single days, by location setting and normalized date, as the provider last
+ * read it. Today's weather for the preferred location is asked for by the widgets, Muzei, the
+ * wearable and the notification after every sync, and by the detail screen, so it is served
+ * from memory instead of SQLite until the provider writes again.
+ *
+ * There is one cache per process, the provider's. Its rows are never changed, a write
+ * invalidates them all.
+ */
+public class ForecastCache {
+
+    // Today and a few days around it for a couple of locations
+    static final int MAX_ENTRIES = 32;
+
+    // What is read on a miss, the columns of the join a cached row can answer for
+    static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // The columns' names in a cursor, and how each one is read
+    private static final String[] COLUMN_NAMES = new String[COLUMNS.length];
+    private static final int TYPE_LONG = 0;
+    private static final int TYPE_DOUBLE = 1;
+    private static final int TYPE_STRING = 2;
+    private static final int[] COLUMN_TYPES = {
+            TYPE_LONG, TYPE_LONG, TYPE_LONG, TYPE_STRING, TYPE_LONG, TYPE_DOUBLE, TYPE_DOUBLE,
+            TYPE_DOUBLE, TYPE_DOUBLE, TYPE_DOUBLE, TYPE_DOUBLE, TYPE_STRING, TYPE_STRING,
+            TYPE_DOUBLE, TYPE_DOUBLE
+    };
+
+    static {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            COLUMN_NAMES[i] = getColumnName(COLUMNS[i]);
+        }
+    }
+
+    private static final ForecastCache sInstance = new ForecastCache();
+
+    private final LruCache<String, Row> mRows = new LruCache<String, Row>(MAX_ENTRIES);
+    // Bumped by every invalidation, so a row read before a write can't be cached after it
+    private int mGeneration;
+
+    public static ForecastCache getInstance() {
+        return sInstance;
+    }
+
+    private ForecastCache() {
+    }
+
+    /**
+     * @return the number of queries answered from memory
+     */
+    public int getHitCount() {
+        return mRows.hitCount();
+    }
+
+    /**
+     * @return the number of queries that had to read the database
+     */
+    public int getMissCount() {
+        return mRows.missCount();
+    }
+
+    /**
+     * @return the cached weather of the day, or null if it has to be read
+     */
+    Row get(String locationSetting, long date) {
+        return mRows.get(getKey(locationSetting, date));
+    }
+
+    /**
+     * @return the generation to hand to {@link #put} with a row that is read now
+     */
+    synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches the weather of a day, unless the provider wrote since it was read.
+     */
+    synchronized void put(String locationSetting, long date, int generation, Row row) {
+        if (generation == mGeneration) {
+            mRows.put(getKey(locationSetting, date), row);
+        }
+    }
+
+    /**
+     * Drops all rows. Has to be called once a write is committed.
+     */
+    synchronized void invalidate() {
+        mGeneration++;
+        mRows.evictAll();
+    }
+
+    private static String getKey(String locationSetting, long date) {
+        return date + "/" + locationSetting;
+    }
+
+    /**
+     * @return whether every column of the projection is one of {@link #COLUMNS}, so a
+     * cached row can answer it. A null projection can't be answered, SELECT * returns both
+     * tables' columns in table order, including the location's _id.
+     */
+    static boolean canServe(String[] projection) {
+        return projection != null && resolve(projection) != null;
+    }
+
+    private static int[] resolve(String[] projection) {
+        int[] indices = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            indices[i] = indexOf(projection[i]);
+            if (indices[i] == -1) {
+                return null;
+            }
+        }
+        return indices;
+    }
+
+    private static int indexOf(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column) || COLUMN_NAMES[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // "weather._id" comes back from SQLite as "_id"
+    private static String getColumnName(String column) {
+        return column.substring(column.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * @return an empty cursor with the columns SQLite would have returned for the projection
+     */
+    static Cursor emptyCursor(String[] projection) {
+        int[] indices = resolve(projection);
+        String[] names = new String[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            names[i] = COLUMN_NAMES[indices[i]];
+        }
+        return new MatrixCursor(names, 0);
+    }
+
+    /**
+     * The weather of one day, immutable.
+     */
+    static class Row {
+        private final Object[] mValues;
+
+        /**
+         * Reads the current row of a cursor that was queried with {@link #COLUMNS}.
+         */
+        Row(Cursor cursor) {
+            mValues = new Object[COLUMNS.length];
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (cursor.isNull(i)) {
+                    continue;
+                }
+                switch (COLUMN_TYPES[i]) {
+                    case TYPE_LONG:
+                        mValues[i] = cursor.getLong(i);
+                        break;
+                    case TYPE_DOUBLE:
+                        mValues[i] = cursor.getDouble(i);
+                        break;
+                    default:
+                        mValues[i] = cursor.getString(i);
+                }
+            }
+        }
+
+        /**
+         * @param projection columns {@link #canServe(String[])} accepts
+         * @return a cursor over the row, with the columns SQLite would have returned
+         */
+        Cursor toCursor(String[] projection) {
+            int[] indices = resolve(projection);
+            String[] names = new String[indices.length];
+            Object[] values = new Object[indices.length];
+            for (int i = 0; i < indices.length; i++) {
+                names[i] = COLUMN_NAMES[indices[i]];
+                values[i] = mValues[indices[i]];
+            }
+            MatrixCursor cursor = new MatrixCursor(names, 1);
+            cursor.addRow(values);
+            return cursor;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Intent;
+
+/**
+ * Which days of which locations a sync changed. It goes along with the data updated broadcast,
+ * so whoever shows the weather can tell whether what it shows is affected at all. A broadcast
+ * without one, or a change that couldn't be pinned down to days, affects everything.
+ *
+ * Changes are never modified, {@link #merge(ForecastChange)} makes a new one.
+ */
+public class ForecastChange {
+
+    private static final String EXTRA_LOCATION_SETTINGS = "change_location_settings";
+    private static final String EXTRA_DATES = "change_dates";
+
+    /**
+     * Anything may have changed.
+     */
+    public static final ForecastChange EVERYTHING = new ForecastChange(null, null);
+
+    /**
+     * Nothing anyone shows changed.
+     */
+    public static final ForecastChange NOTHING = new ForecastChange(new String[0], new long[0]);
+
+    // One entry per changed day, both null if everything may have changed
+    private final String[] mLocationSettings;
+    private final long[] mDates;
+
+    /**
+     * @param locationSettings the location setting of every changed day
+     * @param dates            the normalized date of every changed day, see
+     *                         {@link WeatherContract#normalizeDate(long)}
+     */
+    public ForecastChange(String[] locationSettings, long[] dates) {
+        if ((locationSettings == null) != (dates == null)
+                || (dates != null && locationSettings.length != dates.length)) {
+            throw new IllegalArgumentException("Every changed day needs a location and a date");
+        }
+        mLocationSettings = locationSettings;
+        mDates = dates;
+    }
+
+    public boolean isEverything() {
+        return mDates == null;
+    }
+
+    public boolean isEmpty() {
+        return mDates != null && mDates.length == 0;
+    }
+
+    /**
+     * @return whether the weather of the location on the normalized date may have changed
+     */
+    public boolean affects(String locationSetting, long date) {
+        if (mDates == null) {
+            return true;
+        }
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] == date && mLocationSettings[i].equals(locationSetting)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the weather of the location on the normalized date or any day after it
+     * may have changed
+     */
+    public boolean affectsFrom(String locationSetting, long startDate) {
+        if (mDates == null) {
+            return true;
+        }
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] >= startDate && mLocationSettings[i].equals(locationSetting)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether every day the other change affects is affected by this one as well
+     */
+    public boolean covers(ForecastChange other) {
+        if (isEverything()) {
+            return true;
+        }
+        if (other.isEverything()) {
+            return false;
+        }
+        for (int i = 0; i < other.mDates.length; i++) {
+            if (!affects(other.mLocationSettings[i], other.mDates[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the days changed by either this or the other change
+     */
+    public ForecastChange merge(ForecastChange other) {
+        if (isEverything() || other.isEverything()) {
+            return EVERYTHING;
+        }
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        int size = mDates.length + other.mDates.length;
+        String[] locationSettings = new String[size];
+        long[] dates = new long[size];
+        System.arraycopy(mLocationSettings, 0, locationSettings, 0, mDates.length);
+        System.arraycopy(mDates, 0, dates, 0, mDates.length);
+        System.arraycopy(other.mLocationSettings, 0, locationSettings, mDates.length,
+                other.mDates.length);
+        System.arraycopy(other.mDates, 0, dates, mDates.length, other.mDates.length);
+        return new ForecastChange(locationSettings, dates);
+    }
+
+    /**
+     * Puts the change in the extras of the intent, to be read back with
+     * {@link #fromIntent(Intent)}.
+     */
+    public Intent writeTo(Intent intent) {
+        if (isEverything()) {
+            intent.removeExtra(EXTRA_LOCATION_SETTINGS);
+            intent.removeExtra(EXTRA_DATES);
+            return intent;
+        }
+        return intent.putExtra(EXTRA_LOCATION_SETTINGS, mLocationSettings)
+                .putExtra(EXTRA_DATES, mDates);
+    }
+
+    /**
+     * @return the change the intent carries, or {@link #EVERYTHING} if it doesn't carry one
+     */
+    public static ForecastChange fromIntent(Intent intent) {
+        if (intent == null) {
+            return EVERYTHING;
+        }
+        String[] locationSettings = intent.getStringArrayExtra(EXTRA_LOCATION_SETTINGS);
+        long[] dates = intent.getLongArrayExtra(EXTRA_DATES);
+        if (locationSettings == null || dates == null || locationSettings.length != dates.length) {
+            return EVERYTHING;
+        }
+        return new ForecastChange(locationSettings, dates);
+    }
+
+    @Override
+    public String toString() {
+        return isEverything() ? "everything" : mDates.length + " days";
+    }
+}
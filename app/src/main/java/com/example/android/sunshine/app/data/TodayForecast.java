@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.Utility;
+
+/**
+ * Today's weather for the preferred location, as the widgets, Muzei, the notification and the
+ * wearable show it. After a sync it is read once and handed to all of them, see
+ * {@link #writeTo(Intent)}.
+ */
+public class TodayForecast {
+
+    private static final String[] TODAY_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_SHORT_DESC = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+
+    private static final String EXTRA_LOCATION_SETTING = "today_location_setting";
+    private static final String EXTRA_DATE = "today_date";
+    private static final String EXTRA_WEATHER_ID = "today_weather_id";
+    private static final String EXTRA_DESCRIPTION = "today_description";
+    private static final String EXTRA_HIGH = "today_high";
+    private static final String EXTRA_LOW = "today_low";
+
+    public final String locationSetting;
+    // Normalized, see WeatherContract.normalizeDate
+    public final long date;
+    public final int weatherId;
+    public final String description;
+    public final double high;
+    public final double low;
+
+    public TodayForecast(String locationSetting, long date, int weatherId, String description,
+                         double high, double low) {
+        this.locationSetting = locationSetting;
+        this.date = date;
+        this.weatherId = weatherId;
+        this.description = description;
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Reads today's weather for the preferred location. Like the widgets and Muzei always
+     * did, this is the first stored day from today on, so a forecast that lacks today still
+     * shows the next day instead of nothing.
+     *
+     * @return the forecast, or null if there is none stored from today on
+     */
+    public static TodayForecast load(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri, TODAY_PROJECTION, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new TodayForecast(locationSetting,
+                    cursor.getLong(INDEX_DATE),
+                    cursor.getInt(INDEX_WEATHER_ID),
+                    cursor.getString(INDEX_SHORT_DESC),
+                    cursor.getDouble(INDEX_MAX_TEMP),
+                    cursor.getDouble(INDEX_MIN_TEMP));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return whether this is still the first day from today on for the preferred location,
+     * i.e. what {@link #load(Context)} would read as long as no sync stored anything since
+     */
+    public boolean isCurrent(Context context) {
+        return date >= WeatherContract.normalizeDate(System.currentTimeMillis())
+                && locationSetting.equals(Utility.getPreferredLocation(context));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TodayForecast)) {
+            return false;
+        }
+        TodayForecast other = (TodayForecast) o;
+        return date == other.date
+                && weatherId == other.weatherId
+                && Double.compare(high, other.high) == 0
+                && Double.compare(low, other.low) == 0
+                && locationSetting.equals(other.locationSetting)
+                && (description == null ? other.description == null
+                        : description.equals(other.description));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = locationSetting.hashCode();
+        result = 31 * result + (int) (date ^ (date >>> 32));
+        result = 31 * result + weatherId;
+        return result;
+    }
+
+    /**
+     * Puts the forecast in the extras of the intent, to be read back with
+     * {@link #fromIntent(Intent)}.
+     */
+    public Intent writeTo(Intent intent) {
+        return intent.putExtra(EXTRA_LOCATION_SETTING, locationSetting)
+                .putExtra(EXTRA_DATE, date)
+                .putExtra(EXTRA_WEATHER_ID, weatherId)
+                .putExtra(EXTRA_DESCRIPTION, description)
+                .putExtra(EXTRA_HIGH, high)
+                .putExtra(EXTRA_LOW, low);
+    }
+
+    /**
+     * @return the forecast the intent carries, or null if it doesn't carry one
+     */
+    public static TodayForecast fromIntent(Intent intent) {
+        if (intent == null || !intent.hasExtra(EXTRA_LOCATION_SETTING)) {
+            return null;
+        }
+        return new TodayForecast(intent.getStringExtra(EXTRA_LOCATION_SETTING),
+                intent.getLongExtra(EXTRA_DATE, 0),
+                intent.getIntExtra(EXTRA_WEATHER_ID, 0),
+                intent.getStringExtra(EXTRA_DESCRIPTION),
+                intent.getDoubleExtra(EXTRA_HIGH, 0),
+                intent.getDoubleExtra(EXTRA_LOW, 0));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Collects the weather rows, by location and date, that a provider operation wrote or deleted,
+ * so that only the observers of those days are notified instead of everyone watching the
+ * weather.
+ */
+class WeatherChangeSet {
+
+    // Past this many days one notification on the broad URI is cheaper than one per day
+    static final int MAX_SCOPED_NOTIFICATIONS = 256;
+
+    private static final String[] ROW_KEY_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE
+    };
+
+    private static final String[] LOCATION_SETTING_PROJECTION = new String[] {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+    };
+
+    private final Map<Long, Set<Long>> mDatesByLocationId = new HashMap<Long, Set<Long>>();
+    private int mSize;
+    // Set when a change can't be pinned down to a location and date
+    private boolean mUnscoped;
+
+    void add(long locationId, long date) {
+        Set<Long> dates = mDatesByLocationId.get(locationId);
+        if (dates == null) {
+            dates = new TreeSet<Long>();
+            mDatesByLocationId.put(locationId, dates);
+        }
+        if (dates.add(date)) {
+            mSize++;
+        }
+    }
+
+    /**
+     * Adds the row written with the given (date normalized) values.
+     */
+    void add(ContentValues values) {
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (locationId == null || date == null) {
+            mUnscoped = true;
+        } else {
+            add(locationId, date);
+        }
+    }
+
+    /**
+     * Adds the weather rows matching the selection. Has to be called before they are updated
+     * or deleted.
+     */
+    void addRows(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                ROW_KEY_PROJECTION,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                null);
+        try {
+            while (cursor.moveToNext()) {
+                add(cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Makes the change notify everyone watching the weather, e.g. because rows moved to
+     * another date or location.
+     */
+    void setUnscoped() {
+        mUnscoped = true;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0 && !mUnscoped;
+    }
+
+    /**
+     * Turns the changed rows into the URIs observers of a single day are watching.
+     *
+     * @return one {@link WeatherContract.WeatherEntry#buildWeatherLocationWithDate} URI per
+     * changed day, or null if the change has to be announced on the broad URI instead
+     */
+    List<Uri> resolveUris(SQLiteDatabase db) {
+        if (mUnscoped || mSize > MAX_SCOPED_NOTIFICATIONS) {
+            return null;
+        }
+        List<Uri> uris = new ArrayList<Uri>(mSize);
+        if (mSize == 0) {
+            return uris;
+        }
+
+        // The URIs are keyed by location setting, the rows by location id
+        StringBuilder selection = new StringBuilder(WeatherContract.LocationEntry._ID)
+                .append(" IN (");
+        String[] selectionArgs = new String[mDatesByLocationId.size()];
+        int i = 0;
+        for (Long locationId : mDatesByLocationId.keySet()) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i++] = Long.toString(locationId);
+        }
+        selection.append(')');
+
+        int resolvedLocations = 0;
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                LOCATION_SETTING_PROJECTION,
+                selection.toString(),
+                selectionArgs,
+                null,
+                null,
+                null);
+        try {
+            while (cursor.moveToNext()) {
+                String locationSetting = cursor.getString(1);
+                for (long date : mDatesByLocationId.get(cursor.getLong(0))) {
+                    uris.add(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                            locationSetting, date));
+                }
+                resolvedLocations++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // Weather of a location we don't know can't be addressed by its setting
+        return resolvedLocations == mDatesByLocationId.size() ? uris : null;
+    }
+}
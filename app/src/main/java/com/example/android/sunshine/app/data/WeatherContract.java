@@ -44,6 +44,15 @@ public class WeatherContract {
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
 
+    // Provider method, see ContentResolver.call, storing the ForecastBatch passed in the extras
+    // under EXTRA_FORECAST_BATCH like a bulkInsert into the weather table would. The number of
+    // rows written is returned under EXTRA_ROWS_WRITTEN, and which rows of the batch they were
+    // under EXTRA_WRITTEN_ROWS.
+    public static final String METHOD_INSERT_FORECAST = "insert_forecast";
+    public static final String EXTRA_FORECAST_BATCH = "forecast_batch";
+    public static final String EXTRA_ROWS_WRITTEN = "rows_written";
+    public static final String EXTRA_WRITTEN_ROWS = "written_rows";
+
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
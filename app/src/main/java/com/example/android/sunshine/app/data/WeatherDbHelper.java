@@ -15,25 +15,88 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
  * Manages a local database for weather data.
+ *
+ * Where the platform supports it the database runs in write-ahead logging mode, so the
+ * loaders, widgets and Muzei can keep reading while the sync adapter writes a forecast.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // If you change the database schema, you must increment the database version and add
+    // the step to upgrade to it in upgradeFrom.
+    static final int DATABASE_VERSION = 3;
+
+    // Databases older than this are recreated instead of upgraded
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Serves the weather of a location from a start date on, in date order, which is what
+    // the forecast list and the detail widget ask for. The UNIQUE (date, location_id)
+    // constraint has the columns the wrong way round for that. It also holds every weather
+    // column those lists show, so they are read from the index alone.
+    //
+    // The weather of a single day, as the detail screen and today's forecast ask for it, is
+    // found through the UNIQUE constraint, which SQLite prefers for an exact (date, location)
+    // match. Covering that as well would copy the whole row into the index for a one-row read.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date_idx";
+
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_WEATHER_LOCATION_DATE + " ON " +
+                    WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                    WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherEntry.COLUMN_MIN_TEMP + ");";
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            // Readers get their own connections from the pool and read the last committed
+            // forecast instead of waiting for the sync transaction to finish
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        configureConnection(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // There is no onConfigure before Jelly Bean
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && !db.isReadOnly()) {
+                db.enableWriteAheadLogging();
+            }
+            configureConnection(db);
+        }
+    }
+
+    private static void configureConnection(SQLiteDatabase db) {
+        // PRAGMAs only hold for the connection they run on. Here that is the primary
+        // connection, the one all writes go through, so it is the only one that needs this:
+        // with write-ahead logging NORMAL only risks the last commits on a power loss, which
+        // the next sync fetches again. It saves an fsync on every transaction.
+        //
+        // The pooled reader connections keep SQLite's default page cache, which already
+        // holds the whole database of a few hundred rows.
+        db.execSQL("PRAGMA synchronous = NORMAL");
     }
 
     @Override
@@ -81,18 +144,46 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 
+    /**
+     * Brings the database up to date one version at a time, keeping the stored weather so the
+     * app has something to show before the first sync after an update. SQLiteOpenHelper runs
+     * this in a transaction, so a failing step leaves the old database as it was.
+     *
+     * To change the schema, increment DATABASE_VERSION, change onCreate to create the new
+     * schema and add a step to upgradeFrom that turns the previous version into it. Steps
+     * must not use the table definitions of onCreate, those describe the latest version only.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        // Note that this only fires if you change the version number for your database.
-        // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            // There are no steps for databases this old. They are only a cache for online
+            // data, so discard the data and start over.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        for (int version = oldVersion; version < newVersion; version++) {
+            upgradeFrom(sqLiteDatabase, version);
+        }
+    }
+
+    /**
+     * Upgrades the database from the given version to the next one.
+     */
+    private static void upgradeFrom(SQLiteDatabase sqLiteDatabase, int version) {
+        switch (version) {
+            case 2:
+                // Version 3 added the index for reading the weather of a location by date
+                sqLiteDatabase.execSQL("CREATE INDEX IF NOT EXISTS weather_location_date_idx"
+                        + " ON weather (location_id, date, weather_id, short_desc, max, min);");
+                break;
+            default:
+                throw new IllegalStateException("No upgrade from database version " + version);
+        }
     }
 }
@@ -23,6 +23,10 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+
+import java.util.Arrays;
+import java.util.List;
 
 public class WeatherProvider extends ContentProvider {
 
@@ -35,7 +39,7 @@ public class WeatherProvider extends ContentProvider {
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -52,18 +56,18 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
@@ -93,19 +97,51 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    /**
+     * Answers from the {@link ForecastCache} where it can. On a miss the whole row is read,
+     * so the next query for the day hits whatever its projection.
+     */
     private Cursor getWeatherByLocationSettingAndDate(
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        String[] selectionArgs = new String[]{locationSetting, Long.toString(date)};
+
+        if (!ForecastCache.canServe(projection)) {
+            return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                    projection,
+                    sLocationSettingAndDaySelection,
+                    selectionArgs,
+                    null,
+                    null,
+                    sortOrder
+            );
+        }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
-                null,
-                null,
-                sortOrder
-        );
+        ForecastCache cache = ForecastCache.getInstance();
+        ForecastCache.Row row = cache.get(locationSetting, date);
+        if (row == null) {
+            int generation = cache.getGeneration();
+            Cursor cursor = sWeatherByLocationSettingQueryBuilder.query(
+                    mOpenHelper.getReadableDatabase(),
+                    ForecastCache.COLUMNS,
+                    sLocationSettingAndDaySelection,
+                    selectionArgs,
+                    null,
+                    null,
+                    null
+            );
+            try {
+                if (!cursor.moveToFirst()) {
+                    return ForecastCache.emptyCursor(projection);
+                }
+                row = new ForecastCache.Row(cursor);
+            } finally {
+                cursor.close();
+            }
+            cache.put(locationSetting, date, generation, row);
+        }
+        return row.toCursor(projection);
     }
 
     /*
@@ -238,6 +274,9 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                WeatherChangeSet changes = new WeatherChangeSet();
+                changes.add(values);
+                notifyWeatherChange(db, changes, uri);
                 break;
             }
             case LOCATION: {
@@ -246,12 +285,13 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                ForecastCache.getInstance().invalidate();
+                getContext().getContentResolver().notifyChange(uri, null);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
         return returnUri;
     }
 
@@ -263,10 +303,21 @@ public class WeatherProvider extends ContentProvider {
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
+            case WEATHER: {
+                WeatherChangeSet changes = new WeatherChangeSet();
+                db.beginTransaction();
+                try {
+                    changes.addRows(db, selection, selectionArgs);
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                // The deleted locations are still there to be resolved
+                notifyWeatherChange(db, changes, uri);
+                return rowsDeleted;
+            }
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
@@ -276,11 +327,32 @@ public class WeatherProvider extends ContentProvider {
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
+            ForecastCache.getInstance().invalidate();
             getContext().getContentResolver().notifyChange(uri, null);
         }
         return rowsDeleted;
     }
 
+    /**
+     * Notifies the observers of the changed days only, e.g. a DetailFragment showing another
+     * day doesn't need to query again. Falls back to the URI the change was made on if the
+     * days can't be told.
+     */
+    private void notifyWeatherChange(SQLiteDatabase db, WeatherChangeSet changes, Uri uri) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        ForecastCache.getInstance().invalidate();
+        List<Uri> changedUris = changes.resolveUris(db);
+        if (changedUris == null) {
+            getContext().getContentResolver().notifyChange(uri, null);
+            return;
+        }
+        for (Uri changedUri : changedUris) {
+            getContext().getContentResolver().notifyChange(changedUri, null);
+        }
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -297,11 +369,29 @@ public class WeatherProvider extends ContentProvider {
         int rowsUpdated;
 
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
+                WeatherChangeSet changes = new WeatherChangeSet();
+                db.beginTransaction();
+                try {
+                    if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)
+                            || values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)) {
+                        // The rows move, so observers of where they end up need to hear too
+                        changes.setUnscoped();
+                    } else {
+                        changes.addRows(db, selection, selectionArgs);
+                    }
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (rowsUpdated != 0) {
+                    notifyWeatherChange(db, changes, uri);
+                }
+                return rowsUpdated;
+            }
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
@@ -310,44 +400,238 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
+            ForecastCache.getInstance().invalidate();
             getContext().getContentResolver().notifyChange(uri, null);
         }
         return rowsUpdated;
     }
 
+    /**
+     * Inserts weather rows, skipping those that are already stored with the same values, so
+     * a forecast that didn't change doesn't rewrite the table or wake up any observers.
+     *
+     * @return the number of rows that were actually written. The remaining rows were unchanged.
+     */
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+                WeatherChangeSet changes = new WeatherChangeSet();
                 db.beginTransaction();
                 int returnCount = 0;
+                WeatherRowWriter writer = null;
                 try {
+                    // Compiled in here, so the transaction is ended even if that fails
+                    writer = new WeatherRowWriter(db);
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        if (isWeatherStored(db, value)) {
+                            continue;
+                        }
+                        long _id = WeatherRowWriter.canWrite(value)
+                                ? writer.insert(value)
+                                : db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
                         if (_id != -1) {
+                            changes.add(value);
                             returnCount++;
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
+                    if (writer != null) {
+                        writer.close();
+                    }
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyWeatherChange(db, changes, uri);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Handles {@link WeatherContract#METHOD_INSERT_FORECAST}, the sync's way of storing a
+     * forecast without building a ContentValues per day.
+     */
+    @Override
+    @TargetApi(11)
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (!WeatherContract.METHOD_INSERT_FORECAST.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        ForecastBatch batch = null;
+        if (extras != null) {
+            extras.setClassLoader(ForecastBatch.class.getClassLoader());
+            batch = extras.getParcelable(WeatherContract.EXTRA_FORECAST_BATCH);
+        }
+        if (batch == null) {
+            throw new IllegalArgumentException("No ForecastBatch extra "
+                    + WeatherContract.EXTRA_FORECAST_BATCH + " for " + method);
+        }
+        int[] writtenRows = new int[batch.size()];
+        int rowsWritten = insertForecast(batch, writtenRows);
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.EXTRA_ROWS_WRITTEN, rowsWritten);
+        result.putIntArray(WeatherContract.EXTRA_WRITTEN_ROWS,
+                Arrays.copyOf(writtenRows, rowsWritten));
+        return result;
+    }
+
+    /**
+     * Like {@link #bulkInsert(Uri, ContentValues[])} for the weather table, skipping the rows
+     * that are stored with the same values already.
+     *
+     * @param writtenRows filled with the rows of the batch that were written, or null
+     * @return the number of rows that were actually written
+     */
+    int insertForecast(ForecastBatch batch, int[] writtenRows) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        WeatherChangeSet changes = new WeatherChangeSet();
+        db.beginTransaction();
+        int returnCount = 0;
+        WeatherRowWriter writer = null;
+        try {
+            // Compiled in here, so the transaction is ended even if that fails
+            writer = new WeatherRowWriter(db);
+            for (int row = 0; row < batch.size(); row++) {
+                if (isWeatherStored(db, batch, row)) {
+                    continue;
+                }
+                if (writer.insert(batch, row) != -1) {
+                    changes.add(batch.getLocationId(row), batch.getDate(row));
+                    if (writtenRows != null) {
+                        writtenRows[returnCount] = row;
+                    }
+                    returnCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            db.endTransaction();
+        }
+        notifyWeatherChange(db, changes, WeatherContract.WeatherEntry.CONTENT_URI);
+        return returnCount;
+    }
+
+    //location_id = ? AND date = ?
+    private static final String sLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    /**
+     * Checks whether the weather row for the location and date of the given values is stored
+     * with exactly these values already.
+     */
+    private boolean isWeatherStored(SQLiteDatabase db, ContentValues values) {
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (locationId == null || date == null) {
+            // Can't tell which row it would replace
+            return false;
+        }
+
+        String[] columns = values.keySet().toArray(new String[values.size()]);
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                columns,
+                sLocationIdAndDaySelection,
+                new String[]{Long.toString(locationId), Long.toString(date)},
+                null,
+                null,
+                null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            for (int i = 0; i < columns.length; i++) {
+                if (!isStoredValue(cursor, i, values.get(columns[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // The columns of a batch row compared by isWeatherStored, the key aside
+    private static final String[] BATCH_VALUE_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    /**
+     * Checks whether a row of the batch is stored with exactly its values already.
+     */
+    private boolean isWeatherStored(SQLiteDatabase db, ForecastBatch batch, int row) {
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                BATCH_VALUE_COLUMNS,
+                sLocationIdAndDaySelection,
+                new String[]{Long.toString(batch.getLocationId(row)),
+                        Long.toString(batch.getDate(row))},
+                null,
+                null,
+                null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            String description = batch.getDescription(row);
+            // In the order of BATCH_VALUE_COLUMNS
+            return (description == null
+                            ? cursor.isNull(0) : description.equals(cursor.getString(0)))
+                    && cursor.getLong(1) == batch.getWeatherId(row)
+                    && cursor.getDouble(2) == batch.getMinTemp(row)
+                    && cursor.getDouble(3) == batch.getMaxTemp(row)
+                    && cursor.getDouble(4) == batch.getHumidity(row)
+                    && cursor.getDouble(5) == batch.getPressure(row)
+                    && cursor.getDouble(6) == batch.getWindSpeed(row)
+                    && cursor.getDouble(7) == batch.getDegrees(row);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Compares a column of the cursor with a value as SQLite would have stored it.
+     */
+    private static boolean isStoredValue(Cursor cursor, int index, Object value) {
+        if (value == null || cursor.isNull(index)) {
+            return value == null && cursor.isNull(index);
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return cursor.getDouble(index) == ((Number) value).doubleValue();
+        }
+        if (value instanceof Number) {
+            return cursor.getLong(index) == ((Number) value).longValue();
+        }
+        if (value instanceof Boolean) {
+            return cursor.getLong(index) == ((Boolean) value ? 1 : 0);
+        }
+        if (value instanceof byte[]) {
+            return Arrays.equals(cursor.getBlob(index), (byte[]) value);
+        }
+        return value.toString().equals(cursor.getString(index));
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
     @Override
     @TargetApi(11)
     public void shutdown() {
+        ForecastCache.getInstance().invalidate();
         mOpenHelper.close();
         super.shutdown();
     }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Inserts weather rows through a single compiled statement. SQLiteDatabase.insert builds the
+ * SQL from the ContentValues and has it compiled again for every row, this binds the values
+ * of each row to the same statement instead.
+ *
+ * Only rows with exactly the weather columns can be written this way, see
+ * {@link #canWrite(ContentValues)}. Close the writer when the batch is done.
+ */
+class WeatherRowWriter {
+    private static final String LOG_TAG = WeatherRowWriter.class.getSimpleName();
+
+    // The order of the statement's parameters
+    private static final String[] COLUMNS = new String[] {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private final SQLiteStatement mInsert;
+
+    WeatherRowWriter(SQLiteDatabase db) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(WeatherEntry.TABLE_NAME)
+                .append(" (");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            sql.append(i == 0 ? "" : ",").append(COLUMNS[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(')');
+        // The table's UNIQUE (date, location_id) ON CONFLICT REPLACE still applies
+        mInsert = db.compileStatement(sql.toString());
+    }
+
+    /**
+     * @return true if the values hold the weather columns and nothing else
+     */
+    static boolean canWrite(ContentValues values) {
+        if (values.size() != COLUMNS.length) {
+            return false;
+        }
+        for (String column : COLUMNS) {
+            if (!values.containsKey(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inserts a row, like SQLiteDatabase.insert.
+     *
+     * @return the row ID of the new row, or -1 if an error occurred
+     */
+    long insert(ContentValues values) {
+        mInsert.clearBindings();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            bind(i + 1, values.get(COLUMNS[i]));
+        }
+        try {
+            return mInsert.executeInsert();
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Error inserting " + values, e);
+            return -1;
+        }
+    }
+
+    /**
+     * Inserts a row of the batch, binding its values without boxing them.
+     *
+     * @return the row ID of the new row, or -1 if an error occurred
+     */
+    long insert(ForecastBatch batch, int row) {
+        // Bound in the order of COLUMNS
+        mInsert.bindLong(1, batch.getLocationId(row));
+        mInsert.bindLong(2, batch.getDate(row));
+        String description = batch.getDescription(row);
+        if (description == null) {
+            mInsert.bindNull(3);
+        } else {
+            mInsert.bindString(3, description);
+        }
+        mInsert.bindLong(4, batch.getWeatherId(row));
+        mInsert.bindDouble(5, batch.getMinTemp(row));
+        mInsert.bindDouble(6, batch.getMaxTemp(row));
+        mInsert.bindDouble(7, batch.getHumidity(row));
+        mInsert.bindDouble(8, batch.getPressure(row));
+        mInsert.bindDouble(9, batch.getWindSpeed(row));
+        mInsert.bindDouble(10, batch.getDegrees(row));
+        try {
+            return mInsert.executeInsert();
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Error inserting row " + row + " of a forecast batch", e);
+            return -1;
+        }
+    }
+
+    private void bind(int index, Object value) {
+        if (value == null) {
+            mInsert.bindNull(index);
+        } else if (value instanceof Double || value instanceof Float) {
+            mInsert.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            mInsert.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            mInsert.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            mInsert.bindBlob(index, (byte[]) value);
+        } else {
+            mInsert.bindString(index, value.toString());
+        }
+    }
+
+    void close() {
+        mInsert.close();
+    }
+}
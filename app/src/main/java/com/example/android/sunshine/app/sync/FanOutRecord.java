@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Remembers which location and day the weather was last handed out for after a sync. When the
+ * preferred location or the day changes, what everyone shows is out of date even if the sync
+ * itself wrote nothing, e.g. because the new location's forecast was stored already or the
+ * server answered 304 Not Modified.
+ *
+ * It is kept next to the {@link HttpValidatorCache}, since the sync usually runs in a process
+ * that doesn't live long.
+ */
+public class FanOutRecord {
+    static final String PREFS_NAME = "fan_out";
+
+    private static final String KEY_LOCATION_SETTING = "location_setting";
+    private static final String KEY_JULIAN_DAY = "julian_day";
+
+    private final SharedPreferences mPrefs;
+
+    public FanOutRecord(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if the weather was last handed out for another location or day
+     */
+    public boolean differsFrom(String locationSetting, int julianDay) {
+        return mPrefs.getInt(KEY_JULIAN_DAY, -1) != julianDay
+                || !locationSetting.equals(mPrefs.getString(KEY_LOCATION_SETTING, null));
+    }
+
+    /**
+     * Remembers that the weather was handed out for the location and day.  This function
+     * should not be called from the UI thread because it uses commit to write to the shared
+     * preferences.
+     */
+    public void put(String locationSetting, int julianDay) {
+        mPrefs.edit()
+                .putString(KEY_LOCATION_SETTING, locationSetting)
+                .putInt(KEY_JULIAN_DAY, julianDay)
+                .commit();
+    }
+
+    public void clear() {
+        mPrefs.edit().clear().commit();
+    }
+}
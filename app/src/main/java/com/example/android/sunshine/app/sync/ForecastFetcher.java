@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads and parses the forecasts of one or more locations.
+ *
+ * Most of a sync is spent waiting on the network, so the forecasts of several locations are
+ * fetched on a small pool of threads at once. Nothing is written here, storing the results is
+ * left to the caller so that it can happen in one go on the sync thread.
+ */
+class ForecastFetcher {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    // Enough to overlap the round trips without opening a connection per saved location
+    static final int MAX_PARALLEL_FETCHES = 4;
+
+    /**
+     * The forecast to fetch for one location.
+     */
+    static class Request {
+        final String locationSetting;
+        final Uri uri;
+        final boolean conditional;
+
+        /**
+         * @param locationSetting the location the forecast will be stored for
+         * @param uri the OpenWeatherMap query
+         * @param conditional false to always fetch the full forecast, e.g. when nothing has
+         *                    been stored for it yet
+         */
+        Request(String locationSetting, Uri uri, boolean conditional) {
+            this.locationSetting = locationSetting;
+            this.uri = uri;
+            this.conditional = conditional;
+        }
+    }
+
+    /**
+     * What came back for one location. Exactly one of {@link #notModified},
+     * {@link #forecast} and {@link #error} describes the outcome.
+     */
+    static class Result {
+        final Request request;
+        // Closed by the time the result is handed out, but can still be committed
+        ForecastHttpClient.Response response;
+        ForecastJsonParser.Forecast forecast;
+        Exception error;
+        boolean notModified;
+
+        Result(Request request) {
+            this.request = request;
+        }
+
+        long getWireBytes() {
+            return response == null ? 0 : response.getWireBytes();
+        }
+
+        long getDecodedBytes() {
+            return response == null ? 0 : response.getDecodedBytes();
+        }
+    }
+
+    private final ForecastHttpClient mClient;
+    private final int mJulianStartDay;
+
+    /**
+     * @param julianStartDay the julian day of the first forecast entry
+     */
+    ForecastFetcher(ForecastHttpClient client, int julianStartDay) {
+        mClient = client;
+        mJulianStartDay = julianStartDay;
+    }
+
+    /**
+     * Fetches all the requested forecasts, at most {@link #MAX_PARALLEL_FETCHES} at a time.
+     *
+     * @return the results in the order of the requests
+     */
+    List<Result> fetchAll(List<Request> requests) throws InterruptedException {
+        List<Result> results = new ArrayList<Result>(requests.size());
+        if (requests.size() == 1) {
+            // Not worth a thread
+            results.add(fetch(requests.get(0)));
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(requests.size(), MAX_PARALLEL_FETCHES));
+        try {
+            List<Callable<Result>> tasks = new ArrayList<Callable<Result>>(requests.size());
+            for (final Request request : requests) {
+                tasks.add(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return fetch(request);
+                    }
+                });
+            }
+            for (Future<Result> future : executor.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // fetch() handles everything it expects, so this is a bug
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Fetches and parses a single forecast. Errors are reported in the result.
+     */
+    Result fetch(Request request) {
+        Result result = new Result(request);
+        try {
+            result.response = mClient.get(request.uri, mJulianStartDay, request.conditional);
+            if (result.response.isNotModified()) {
+                result.notModified = true;
+                return result;
+            }
+
+            InputStream inputStream = result.response.getBody();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Parse straight off the wire, the body is never held in memory as a whole.
+                result.forecast = ForecastJsonParser.parse(
+                        new BufferedInputStream(inputStream), mJulianStartDay);
+            } else {
+                String forecastJsonStr = readFully(inputStream);
+                if (forecastJsonStr.length() == 0) {
+                    // Stream was empty.  No point in parsing.
+                    throw new IOException("Empty response for " + request.locationSetting);
+                }
+                result.forecast = ForecastJsonParser.parse(forecastJsonStr, mJulianStartDay);
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(LOG_TAG, "Error fetching the forecast for " + request.locationSetting, e);
+            result.error = e;
+        } finally {
+            if (result.response != null) {
+                try {
+                    result.response.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the input stream into a String. Only used on devices that can't parse the
+     * forecast while it is streamed.
+     */
+    private static String readFully(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+        StringBuilder buffer = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+            // But it does make debugging a *lot* easier if you print out the completed
+            // buffer for debugging.
+            buffer.append(line).append('\n');
+        }
+        return buffer.toString();
+    }
+}
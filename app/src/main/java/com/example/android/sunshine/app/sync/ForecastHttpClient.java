@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Fetches forecasts from OpenWeatherMap.
+ *
+ * Requests are made conditional on the validators of the last stored response, so an
+ * unchanged forecast comes back as 304 Not Modified without a body. Bodies are requested
+ * gzip compressed and decompressed while they are read, counting the bytes on both sides.
+ */
+public class ForecastHttpClient {
+
+    private final HttpValidatorCache mValidatorCache;
+
+    public ForecastHttpClient(Context context) {
+        this(new HttpValidatorCache(context));
+    }
+
+    ForecastHttpClient(HttpValidatorCache validatorCache) {
+        mValidatorCache = validatorCache;
+    }
+
+    /**
+     * Opens a GET request for the given forecast.
+     *
+     * @param uri the forecast query, also used as the key for its validators
+     * @param julianDay the julian day the response would be stored for
+     * @param conditional false to always fetch the full forecast, e.g. when nothing has been
+     *                    stored for it yet
+     */
+    public Response get(Uri uri, int julianDay, boolean conditional) throws IOException {
+        String key = uri.toString();
+        if (!conditional) {
+            mValidatorCache.remove(key);
+        }
+
+        URL url = new URL(key);
+
+        // Create the request to OpenWeatherMap, and open the connection
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setRequestMethod("GET");
+        // Asking for gzip ourselves turns off the transparent decompression of
+        // HttpURLConnection, which would hide how many bytes actually came over the network.
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        if (conditional) {
+            mValidatorCache.applyTo(urlConnection, key, julianDay);
+        }
+        urlConnection.connect();
+        return new Response(urlConnection, key, julianDay);
+    }
+
+    /**
+     * A forecast response. Must be closed once it has been handled.
+     */
+    public class Response implements Closeable {
+        private final HttpURLConnection mConnection;
+        private final String mKey;
+        private final int mJulianDay;
+        private CountingInputStream mWireStream;
+        private CountingInputStream mBody;
+        private boolean mValidatorsRead;
+        private String mETag;
+        private String mLastModified;
+
+        Response(HttpURLConnection connection, String key, int julianDay) {
+            mConnection = connection;
+            mKey = key;
+            mJulianDay = julianDay;
+        }
+
+        /**
+         * @return true if the forecast we stored last is still current
+         */
+        public boolean isNotModified() throws IOException {
+            return mConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
+
+        /**
+         * @return the decompressed response body
+         */
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                mWireStream = new CountingInputStream(mConnection.getInputStream());
+                InputStream decoded = "gzip".equalsIgnoreCase(mConnection.getContentEncoding())
+                        ? new GZIPInputStream(mWireStream)
+                        : mWireStream;
+                mBody = new CountingInputStream(decoded);
+            }
+            return mBody;
+        }
+
+        /**
+         * @return the number of body bytes received so far, as they came over the network
+         */
+        public long getWireBytes() {
+            return mWireStream == null ? 0 : mWireStream.getCount();
+        }
+
+        /**
+         * @return the number of body bytes read so far, after decompression
+         */
+        public long getDecodedBytes() {
+            return mBody == null ? 0 : mBody.getCount();
+        }
+
+        /**
+         * Remembers the validators of this response. Only call this once the forecast has
+         * been stored, otherwise the next sync could skip a forecast we never saved. The
+         * response may already be closed by then.
+         */
+        public void commit() {
+            readValidators();
+            mValidatorCache.put(mKey, mETag, mLastModified, mJulianDay);
+        }
+
+        private void readValidators() {
+            if (!mValidatorsRead) {
+                mETag = mConnection.getHeaderField("ETag");
+                mLastModified = mConnection.getHeaderField("Last-Modified");
+                mValidatorsRead = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (mBody != null) {
+                    // Keep what commit() needs, the headers are gone once we disconnect
+                    readValidators();
+                    mBody.close();
+                }
+            } finally {
+                mConnection.disconnect();
+            }
+        }
+    }
+}
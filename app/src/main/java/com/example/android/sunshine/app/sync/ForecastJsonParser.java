@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.text.format.Time;
+import android.util.JsonReader;
+import android.util.MalformedJsonException;
+
+import com.example.android.sunshine.app.data.ForecastBatch;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+/**
+ * Turns an OpenWeatherMap daily forecast response into a {@link ForecastBatch}.
+ *
+ * On Honeycomb and higher the response is pulled token by token straight off the network
+ * stream, so neither the raw body nor a JSONObject tree is ever held in memory. The tree based
+ * parser is kept for older devices, which don't have {@link JsonReader}.
+ */
+public class ForecastJsonParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    static final String OWM_CITY = "city";
+    static final String OWM_CITY_NAME = "name";
+    static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    static final String OWM_LATITUDE = "lat";
+    static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    static final String OWM_LIST = "list";
+
+    static final String OWM_PRESSURE = "pressure";
+    static final String OWM_HUMIDITY = "humidity";
+    static final String OWM_WINDSPEED = "speed";
+    static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    static final String OWM_TEMPERATURE = "temp";
+    static final String OWM_MAX = "max";
+    static final String OWM_MIN = "min";
+
+    static final String OWM_WEATHER = "weather";
+    static final String OWM_DESCRIPTION = "main";
+    static final String OWM_WEATHER_ID = "id";
+
+    static final String OWM_MESSAGE_CODE = "cod";
+
+    // Bits used to check that every field we store was present for a day
+    private static final int FIELD_PRESSURE = 1;
+    private static final int FIELD_HUMIDITY = 1 << 1;
+    private static final int FIELD_WIND_SPEED = 1 << 2;
+    private static final int FIELD_WIND_DIRECTION = 1 << 3;
+    private static final int FIELD_MAX = 1 << 4;
+    private static final int FIELD_MIN = 1 << 5;
+    private static final int FIELD_DESCRIPTION = 1 << 6;
+    private static final int FIELD_WEATHER_ID = 1 << 7;
+    private static final int ALL_DAY_FIELDS = (1 << 8) - 1;
+
+    // OWM forecasts up to 16 days
+    static final int MAX_DAYS = 16;
+
+    /**
+     * The parsed forecast. The weather rows don't carry a location id yet, it is 0 until the
+     * city has been stored.
+     */
+    public static class Forecast {
+        public int messageCode = HttpURLConnection.HTTP_OK;
+        public String cityName;
+        public double cityLatitude;
+        public double cityLongitude;
+        public ForecastBatch weather = new ForecastBatch(0);
+
+        public boolean isSuccessful() {
+            return messageCode == HttpURLConnection.HTTP_OK;
+        }
+    }
+
+    private ForecastJsonParser() {
+    }
+
+    /**
+     * Parses the forecast as it is read from the stream.
+     *
+     * @param in the response body, this method does not close it
+     * @param julianStartDay the julian day of the first forecast entry
+     * @throws IOException if the stream could not be read
+     * @throws JSONException if the response is not a forecast
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static Forecast parse(InputStream in, int julianStartDay)
+            throws IOException, JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            return readForecast(reader, julianStartDay);
+        } catch (MalformedJsonException e) {
+            throw new JSONException(e.getMessage());
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader reports unexpected tokens this way
+            throw new JSONException(e.getMessage());
+        }
+    }
+
+    /**
+     * Parses a forecast held completely in memory. Used on devices without {@link JsonReader}.
+     *
+     * @param forecastJsonStr the complete response body
+     * @param julianStartDay the julian day of the first forecast entry
+     * @throws JSONException if the response is not a forecast
+     */
+    public static Forecast parse(String forecastJsonStr, int julianStartDay)
+            throws JSONException {
+        Forecast forecast = new Forecast();
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            forecast.messageCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+            if (!forecast.isSuccessful()) {
+                return forecast;
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        forecast.cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        forecast.cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        forecast.cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        // now we work exclusively in UTC
+        Time dayTime = new Time();
+        forecast.weather = new ForecastBatch(weatherArray.length());
+
+        for (int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject = dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+
+            forecast.weather.add(0,
+                    dayTime.setJulianDay(julianStartDay + i),
+                    weatherObject.getInt(OWM_WEATHER_ID),
+                    weatherObject.getString(OWM_DESCRIPTION),
+                    temperatureObject.getDouble(OWM_MIN),
+                    temperatureObject.getDouble(OWM_MAX),
+                    dayForecast.getInt(OWM_HUMIDITY),
+                    dayForecast.getDouble(OWM_PRESSURE),
+                    dayForecast.getDouble(OWM_WINDSPEED),
+                    dayForecast.getDouble(OWM_WIND_DIRECTION));
+        }
+        return forecast;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Forecast readForecast(JsonReader reader, int julianStartDay)
+            throws IOException, JSONException {
+        Forecast forecast = new Forecast();
+        ForecastBatch weather = null;
+        boolean hasCity = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                forecast.messageCode = reader.nextInt();
+            } else if (OWM_CITY.equals(name)) {
+                readCity(reader, forecast);
+                hasCity = true;
+            } else if (OWM_LIST.equals(name)) {
+                weather = readDays(reader, julianStartDay);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!forecast.isSuccessful()) {
+            return forecast;
+        }
+        if (weather == null) {
+            throw new JSONException("No value for " + OWM_LIST);
+        }
+        if (!hasCity) {
+            throw new JSONException("No value for " + OWM_CITY);
+        }
+        forecast.weather = weather;
+        return forecast;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readCity(JsonReader reader, Forecast forecast)
+            throws IOException, JSONException {
+        boolean hasLatitude = false;
+        boolean hasLongitude = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                forecast.cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        forecast.cityLatitude = reader.nextDouble();
+                        hasLatitude = true;
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        forecast.cityLongitude = reader.nextDouble();
+                        hasLongitude = true;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (forecast.cityName == null || !hasLatitude || !hasLongitude) {
+            throw new JSONException("Incomplete " + OWM_CITY);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static ForecastBatch readDays(JsonReader reader, int julianStartDay)
+            throws IOException, JSONException {
+        ForecastBatch weather = new ForecastBatch(MAX_DAYS);
+
+        // now we work exclusively in UTC
+        Time dayTime = new Time();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            long dateTime = dayTime.setJulianDay(julianStartDay + weather.size());
+            readDay(reader, dateTime, weather);
+        }
+        reader.endArray();
+        return weather;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readDay(JsonReader reader, long dateTime, ForecastBatch weather)
+            throws IOException, JSONException {
+        // These are the values that will be collected.
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+
+        double high = 0;
+        double low = 0;
+
+        String description = null;
+        int weatherId = 0;
+
+        int fields = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+                fields |= FIELD_PRESSURE;
+            } else if (OWM_HUMIDITY.equals(name)) {
+                humidity = reader.nextInt();
+                fields |= FIELD_HUMIDITY;
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+                fields |= FIELD_WIND_SPEED;
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+                fields |= FIELD_WIND_DIRECTION;
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        high = reader.nextDouble();
+                        fields |= FIELD_MAX;
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        low = reader.nextDouble();
+                        fields |= FIELD_MIN;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Only the first element of the "weather" array is used
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherName = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherName)) {
+                            description = reader.nextString();
+                            fields |= FIELD_DESCRIPTION;
+                        } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                            weatherId = reader.nextInt();
+                            fields |= FIELD_WEATHER_ID;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (fields != ALL_DAY_FIELDS) {
+            throw new JSONException("Incomplete forecast for " + dateTime);
+        }
+        weather.add(0, dateTime, weatherId, description, low, high, humidity, pressure,
+                windSpeed, windDirection);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Persists the ETag and Last-Modified validators of the last forecast that was stored, keyed
+ * by the request URI, so the next sync can ask the server whether anything changed.
+ *
+ * The validators are remembered together with the julian day the forecast was stored for.
+ * The stored rows are dated relative to that day, so they are not reused on a different day
+ * even if the server would consider the forecast unchanged.
+ */
+public class HttpValidatorCache {
+    static final String PREFS_NAME = "http_validators";
+
+    private static final String SUFFIX_ETAG = ".etag";
+    private static final String SUFFIX_LAST_MODIFIED = ".last_modified";
+    private static final String SUFFIX_JULIAN_DAY = ".julian_day";
+
+    private final SharedPreferences mPrefs;
+
+    public HttpValidatorCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds the conditional request headers for the given request, if we have validators that
+     * were stored on the same day.
+     *
+     * @return true if any conditional header was added
+     */
+    public boolean applyTo(HttpURLConnection connection, String key, int julianDay) {
+        if (mPrefs.getInt(key + SUFFIX_JULIAN_DAY, -1) != julianDay) {
+            return false;
+        }
+        String eTag = mPrefs.getString(key + SUFFIX_ETAG, null);
+        String lastModified = mPrefs.getString(key + SUFFIX_LAST_MODIFIED, null);
+        if (eTag != null) {
+            connection.setRequestProperty("If-None-Match", eTag);
+        }
+        if (lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+        return eTag != null || lastModified != null;
+    }
+
+    /**
+     * Remembers the validators of a response whose content has been stored.  This function
+     * should not be called from the UI thread because it uses commit to write to the shared
+     * preferences.
+     */
+    public void put(String key, String eTag, String lastModified, int julianDay) {
+        if (eTag == null && lastModified == null) {
+            remove(key);
+            return;
+        }
+        SharedPreferences.Editor editor = mPrefs.edit();
+        putOrRemove(editor, key + SUFFIX_ETAG, eTag);
+        putOrRemove(editor, key + SUFFIX_LAST_MODIFIED, lastModified);
+        editor.putInt(key + SUFFIX_JULIAN_DAY, julianDay);
+        editor.commit();
+    }
+
+    public void remove(String key) {
+        mPrefs.edit()
+                .remove(key + SUFFIX_ETAG)
+                .remove(key + SUFFIX_LAST_MODIFIED)
+                .remove(key + SUFFIX_JULIAN_DAY)
+                .commit();
+    }
+
+    private static void putOrRemove(SharedPreferences.Editor editor, String key, String value) {
+        if (value != null) {
+            editor.putString(key, value);
+        } else {
+            editor.remove(key);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastChange;
+import com.example.android.sunshine.app.data.TodayForecast;
+import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.wearable.WatchFaceClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tells everything that shows today's weather outside of the app that the forecast changed.
+ * The weather is read once per fan-out and handed to every consumer, along with the days the
+ * sync changed for all its locations together.
+ *
+ * Consumers run one after the other on the calling thread, so a sync is done telling them
+ * before it returns and while the sync framework still keeps the device awake. How long each
+ * of them takes is kept, see {@link #getLatency(String)}.
+ *
+ * Back-to-back syncs are coalesced without waiting for the later ones: a fan-out within
+ * {@link #COALESCE_WINDOW_MILLIS} of the last one is dropped if today's weather reads the same
+ * and the days it changed were all handed out in that window already.
+ */
+class SyncDispatcher {
+    private static final String LOG_TAG = SyncDispatcher.class.getSimpleName();
+
+    /**
+     * Something that shows the weather and has to be told it changed.
+     */
+    interface Consumer {
+        String getName();
+
+        /**
+         * @param today  today's weather for the preferred location, or null if none is stored
+         * @param change the days changed by the sync
+         */
+        void onDataUpdated(Context context, TodayForecast today, ForecastChange change);
+    }
+
+    /**
+     * How long a consumer took over all fan-outs so far.
+     */
+    static class Latency {
+        int count;
+        long totalMicros;
+        long maxMicros;
+
+        long getAverageMicros() {
+            return count == 0 ? 0 : totalMicros / count;
+        }
+
+        @Override
+        public String toString() {
+            return count + " runs, average " + getAverageMicros() + "us, max " + maxMicros + "us";
+        }
+    }
+
+    // A fan-out this soon after the last one is dropped if it would tell nothing new
+    static final long COALESCE_WINDOW_MILLIS = 2 * 1000;
+
+    private static SyncDispatcher sInstance;
+
+    private final Context mContext;
+    private final long mWindowMillis;
+    private final List<Consumer> mConsumers;
+
+    // What the consumers were told in the current window, guarded by mConsumers
+    private TodayForecast mLastToday;
+    private ForecastChange mWindowChange = ForecastChange.NOTHING;
+    private long mWindowStart;
+
+    private final Map<String, Latency> mLatencies = new HashMap<String, Latency>();
+    private int mFanOutCount;
+    private int mCoalescedCount;
+
+    static synchronized SyncDispatcher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncDispatcher(context.getApplicationContext(),
+                    COALESCE_WINDOW_MILLIS, createConsumers());
+        }
+        return sInstance;
+    }
+
+    SyncDispatcher(Context context, long windowMillis, List<Consumer> consumers) {
+        mContext = context;
+        mWindowMillis = windowMillis;
+        mConsumers = consumers;
+    }
+
+    /**
+     * Tells the consumers the weather changed, without knowing which days.
+     */
+    void dispatch() {
+        dispatch(ForecastChange.EVERYTHING);
+    }
+
+    /**
+     * Tells the consumers the days of the change changed, and returns once all of them were
+     * told, or once it is clear they already know. Must not be called on the main thread.
+     */
+    void dispatch(ForecastChange change) {
+        // One fan-out at a time, so consumers never run side by side
+        synchronized (mConsumers) {
+            TodayForecast today = TodayForecast.load(mContext);
+            long now = SystemClock.elapsedRealtime();
+            boolean inWindow = mLastToday != null && now - mWindowStart < mWindowMillis;
+            if (inWindow && mLastToday.equals(today) && mWindowChange.covers(change)) {
+                synchronized (this) {
+                    mCoalescedCount++;
+                }
+                Log.d(LOG_TAG, "Coalesced fan-out of " + change);
+                return;
+            }
+            if (inWindow) {
+                mWindowChange = mWindowChange.merge(change);
+            } else {
+                mWindowChange = change;
+                mWindowStart = now;
+            }
+            mLastToday = today;
+
+            for (Consumer consumer : mConsumers) {
+                long start = System.nanoTime();
+                try {
+                    consumer.onDataUpdated(mContext, today, change);
+                } catch (RuntimeException e) {
+                    // One broken consumer shouldn't keep the others from being updated
+                    Log.e(LOG_TAG, "Error updating " + consumer.getName(), e);
+                }
+                recordLatency(consumer.getName(), (System.nanoTime() - start) / 1000);
+            }
+        }
+        synchronized (this) {
+            mFanOutCount++;
+        }
+    }
+
+    private synchronized void recordLatency(String consumerName, long micros) {
+        Latency latency = mLatencies.get(consumerName);
+        if (latency == null) {
+            latency = new Latency();
+            mLatencies.put(consumerName, latency);
+        }
+        latency.count++;
+        latency.totalMicros += micros;
+        latency.maxMicros = Math.max(latency.maxMicros, micros);
+        Log.d(LOG_TAG, "Updated " + consumerName + " in " + micros + "us, " + latency);
+    }
+
+    /**
+     * @return a copy of how long the consumer took so far, or null if it never ran
+     */
+    synchronized Latency getLatency(String consumerName) {
+        Latency latency = mLatencies.get(consumerName);
+        if (latency == null) {
+            return null;
+        }
+        Latency copy = new Latency();
+        copy.count = latency.count;
+        copy.totalMicros = latency.totalMicros;
+        copy.maxMicros = latency.maxMicros;
+        return copy;
+    }
+
+    /**
+     * @return how often the consumers were told
+     */
+    synchronized int getFanOutCount() {
+        return mFanOutCount;
+    }
+
+    /**
+     * @return how often a fan-out was dropped because the consumers knew already
+     */
+    synchronized int getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    private static List<Consumer> createConsumers() {
+        List<Consumer> consumers = new ArrayList<Consumer>();
+        consumers.add(new Consumer() {
+            @Override
+            public String getName() {
+                return "widgets";
+            }
+
+            @Override
+            public void onDataUpdated(Context context, TodayForecast today, ForecastChange change) {
+                // Setting the package ensures that only components in our app will receive the
+                // broadcast
+                Intent dataUpdatedIntent = new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                        .setPackage(context.getPackageName());
+                if (today != null) {
+                    today.writeTo(dataUpdatedIntent);
+                }
+                // So widgets showing none of the changed days can skip their update
+                change.writeTo(dataUpdatedIntent);
+                context.sendBroadcast(dataUpdatedIntent);
+            }
+        });
+        consumers.add(new Consumer() {
+            @Override
+            public String getName() {
+                return "muzei";
+            }
+
+            @Override
+            public void onDataUpdated(Context context, TodayForecast today, ForecastChange change) {
+                // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to
+                // update the Muzei background on lower API level devices
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                    Intent intent = new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                            .setClass(context, WeatherMuzeiSource.class);
+                    if (today != null) {
+                        today.writeTo(intent);
+                    }
+                    context.startService(intent);
+                }
+            }
+        });
+        consumers.add(new Consumer() {
+            @Override
+            public String getName() {
+                return "notification";
+            }
+
+            @Override
+            public void onDataUpdated(Context context, TodayForecast today, ForecastChange change) {
+                if (today != null) {
+                    WeatherNotification.notifyWeather(context, today);
+                }
+            }
+        });
+        consumers.add(new Consumer() {
+            @Override
+            public String getName() {
+                return "wearable";
+            }
+
+            @Override
+            public void onDataUpdated(Context context, TodayForecast today, ForecastChange change) {
+                if (today != null) {
+                    WatchFaceClient.getInstance(context).publish(today);
+                }
+            }
+        });
+        return consumers;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Keeps track of how many bytes the forecast sync moves, both as they came over the network
+ * and after decompression. The numbers of the last sync and the running totals are persisted,
+ * since the sync usually runs in a process that doesn't live long.
+ */
+public class SyncTransferStats {
+    static final String PREFS_NAME = "sync_transfer_stats";
+
+    private static final String KEY_SYNC_COUNT = "sync_count";
+    private static final String KEY_LAST_WIRE_BYTES = "last_wire_bytes";
+    private static final String KEY_LAST_DECODED_BYTES = "last_decoded_bytes";
+    private static final String KEY_LAST_SYNC_TIME = "last_sync_time";
+    private static final String KEY_TOTAL_WIRE_BYTES = "total_wire_bytes";
+    private static final String KEY_TOTAL_DECODED_BYTES = "total_decoded_bytes";
+
+    private final SharedPreferences mPrefs;
+
+    public SyncTransferStats(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Records the transfer of one sync.  This function should not be called from the UI thread
+     * because it uses commit to write to the shared preferences.
+     *
+     * @param wireBytes body bytes as received, i.e. compressed if the server used gzip
+     * @param decodedBytes body bytes after decompression
+     */
+    public synchronized void record(long wireBytes, long decodedBytes) {
+        mPrefs.edit()
+                .putInt(KEY_SYNC_COUNT, getSyncCount() + 1)
+                .putLong(KEY_LAST_WIRE_BYTES, wireBytes)
+                .putLong(KEY_LAST_DECODED_BYTES, decodedBytes)
+                .putLong(KEY_LAST_SYNC_TIME, System.currentTimeMillis())
+                .putLong(KEY_TOTAL_WIRE_BYTES, getTotalWireBytes() + wireBytes)
+                .putLong(KEY_TOTAL_DECODED_BYTES, getTotalDecodedBytes() + decodedBytes)
+                .commit();
+    }
+
+    public int getSyncCount() {
+        return mPrefs.getInt(KEY_SYNC_COUNT, 0);
+    }
+
+    public long getLastWireBytes() {
+        return mPrefs.getLong(KEY_LAST_WIRE_BYTES, 0);
+    }
+
+    public long getLastDecodedBytes() {
+        return mPrefs.getLong(KEY_LAST_DECODED_BYTES, 0);
+    }
+
+    /**
+     * @return when the last sync was recorded, in milliseconds since the epoch, 0 if never
+     */
+    public long getLastSyncTime() {
+        return mPrefs.getLong(KEY_LAST_SYNC_TIME, 0);
+    }
+
+    public long getTotalWireBytes() {
+        return mPrefs.getLong(KEY_TOTAL_WIRE_BYTES, 0);
+    }
+
+    public long getTotalDecodedBytes() {
+        return mPrefs.getLong(KEY_TOTAL_DECODED_BYTES, 0);
+    }
+
+    /**
+     * @return decoded bytes per byte on the wire over all syncs, 1 if nothing was compressed
+     */
+    public float getTotalCompressionRatio() {
+        long wireBytes = getTotalWireBytes();
+        return wireBytes == 0 ? 1f : (float) getTotalDecodedBytes() / wireBytes;
+    }
+
+    public void reset() {
+        mPrefs.edit().clear().commit();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearable;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.PendingResult;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+/**
+ * Sends data items through the Wearable Data API. The GoogleApiClient is built once and
+ * connected and disconnected as the {@link WatchFaceClient} needs it.
+ */
+class GmsWearableTransport implements WearableTransport, GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener {
+    private static final String LOG_TAG = "GmsWearableTransport";
+
+    private final GoogleApiClient mGoogleApiClient;
+    private Callbacks mCallbacks;
+
+    GmsWearableTransport(Context context) {
+        mGoogleApiClient = new GoogleApiClient.Builder(context)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .addApiIfAvailable(Wearable.API)
+                .build();
+    }
+
+    @Override
+    public void setCallbacks(Callbacks callbacks) {
+        mCallbacks = callbacks;
+    }
+
+    @Override
+    public void connect() {
+        mGoogleApiClient.connect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mGoogleApiClient.isConnected();
+    }
+
+    @Override
+    public boolean isConnecting() {
+        return mGoogleApiClient.isConnecting();
+    }
+
+    @Override
+    public void putDataItem(PutDataRequest request) {
+        PendingResult<DataApi.DataItemResult> pendingResult =
+                Wearable.DataApi.putDataItem(mGoogleApiClient, request);
+
+        pendingResult.setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+            @Override
+            public void onResult(DataApi.DataItemResult dataItemResult) {
+                if (dataItemResult.getStatus().isSuccess()) {
+                    Log.v(LOG_TAG, "Data Item Sent: " + dataItemResult.getDataItem().getUri());
+                    Log.v(LOG_TAG, "Data Item count: " + dataItemResult.getDataItem().getAssets().size());
+                    Log.v(LOG_TAG, "Data Item Sent: " + dataItemResult.getDataItem().toString());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void disconnect() {
+        mGoogleApiClient.disconnect();
+    }
+
+    @Override
+    public void onConnected(@Nullable Bundle bundle) {
+        Log.d(LOG_TAG, "onConnected");
+        if (mCallbacks != null) {
+            mCallbacks.onConnected();
+        }
+    }
+
+    @Override
+    public void onConnectionSuspended(int i) {
+        // The client reconnects by itself
+        Log.d(LOG_TAG, "Connection suspended");
+    }
+
+    @Override
+    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
+        Log.d(LOG_TAG, "Connection failed: " + connectionResult);
+        if (mCallbacks != null) {
+            mCallbacks.onConnectionFailed();
+        }
+    }
+}
@@ -1,126 +1,158 @@
 package com.example.android.sunshine.app.wearable;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
-import android.os.Bundle;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.PendingResult;
-import com.google.android.gms.common.api.ResultCallback;
+import com.example.android.sunshine.app.data.TodayForecast;
 import com.google.android.gms.wearable.Asset;
-import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
 
-public class WatchFaceClient implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener{
+import java.util.ArrayDeque;
+
+/**
+ * Publishes today's weather to the watch face. There is one per process, holding on to its
+ * connection between syncs instead of connecting a new client for every one. Weather
+ * published while connecting is queued, and the connection is dropped once nothing was
+ * published for a while or on {@link #shutdown()}.
+ */
+public class WatchFaceClient implements WearableTransport.Callbacks {
     final static String LOG_TAG = "WatchFaceClient";
     final static String PATH_WEATHER_DATA = "/data/weather";
 
-    final String[] UPDATE_WEARABLE_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-
     final static String KEY_MAX_TEMP = "max_temp";
     final static String KEY_MIN_TEMP = "min_temp";
     final static String KEY_WEATHER_ICON= "weather_icon";
+    // Tells the watch whether the icon changed without it having to fetch the asset
+    final static String KEY_WEATHER_ICON_ID = "weather_icon_id";
+
+    // Each data item replaces the last, so only the newest few are worth keeping
+    static final int MAX_PENDING = 3;
+    // Syncs of all locations and their retries come within a minute of each other
+    static final long IDLE_DISCONNECT_MILLIS = 60 * 1000;
+
+    private static WatchFaceClient sInstance;
+
+    private final Context mContext;
+    private final WearableTransport mTransport;
+    private final WeatherIconAssets mIconAssets;
+    private final long mIdleDisconnectMillis;
+    private final ArrayDeque<TodayForecast> mPending = new ArrayDeque<TodayForecast>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private boolean mShutdown;
+
+    private final Runnable mIdleDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            disconnectIfIdle();
+        }
+    };
 
-    Context mContext;
-    GoogleApiClient mGoogleApiClient;
+    public static synchronized WatchFaceClient getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new WatchFaceClient(appContext, new GmsWearableTransport(appContext),
+                    IDLE_DISCONNECT_MILLIS);
+        }
+        return sInstance;
+    }
 
-    public WatchFaceClient(Context context) {
+    WatchFaceClient(Context context, WearableTransport transport, long idleDisconnectMillis) {
         mContext = context;
-        connectClient();
+        mTransport = transport;
+        mIconAssets = new WeatherIconAssets(context);
+        mIdleDisconnectMillis = idleDisconnectMillis;
+        mTransport.setCallbacks(this);
     }
 
-    public void sendData() {
-
-        if(mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-            String location = Utility.getPreferredLocation(mContext);
-            Uri uri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(location, System.currentTimeMillis());
-            Cursor cursor = mContext.getContentResolver().query(uri, UPDATE_WEARABLE_PROJECTION, null, null, null);
-
-            int weatherId;
-            double maxTemperature;
-            double minTemperature;
-
-            if(cursor != null && cursor.moveToFirst()) {
-                weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                maxTemperature = cursor.getDouble(INDEX_MAX_TEMP);
-                minTemperature = cursor.getDouble(INDEX_MIN_TEMP);
-
-                Bitmap icon = BitmapFactory.decodeResource(mContext.getResources(), Utility.getArtResourceForWeatherCondition(weatherId));
-                Asset asset = Utility.createAssetFromBitmap(icon);
-
-                PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(PATH_WEATHER_DATA).setUrgent();
-                DataMap dataMap = putDataMapRequest.getDataMap();
-
-                dataMap.putAsset(KEY_WEATHER_ICON, asset);
-                dataMap.putString(KEY_MAX_TEMP, Utility.formatTemperature(mContext, maxTemperature));
-                dataMap.putString(KEY_MIN_TEMP, Utility.formatTemperature(mContext, minTemperature));
-                // Time is only used so the data always will be changed, data item is not sent if not updated.
-                dataMap.putLong("time", System.currentTimeMillis());
-
-                PutDataRequest putDataRequest = putDataMapRequest.asPutDataRequest();
-                PendingResult<DataApi.DataItemResult> pendingResult = Wearable.DataApi.putDataItem(mGoogleApiClient, putDataRequest);
-
-                pendingResult.setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                    @Override
-                    public void onResult(DataApi.DataItemResult dataItemResult) {
-                        if (dataItemResult.getStatus().isSuccess()) {
-                            Log.v(LOG_TAG, "Data Item Sent: " + dataItemResult.getDataItem().getUri());
-                            Log.v(LOG_TAG, "Data Item count: " + dataItemResult.getDataItem().getAssets().size());
-                            Log.v(LOG_TAG, "Data Item Sent: " + dataItemResult.getDataItem().toString());
-                        }
-                    }
-                });
-            }
+    /**
+     * Sends the weather to the watch, connecting first if needed.
+     */
+    public synchronized void publish(TodayForecast today) {
+        if (mShutdown) {
+            Log.w(LOG_TAG, "Not publishing, the client was shut down");
+            return;
         }
-        else
-            connectClient();
-    }
+        mHandler.removeCallbacks(mIdleDisconnect);
+        mHandler.postDelayed(mIdleDisconnect, mIdleDisconnectMillis);
 
-    private void connectClient() {
-        mGoogleApiClient = new GoogleApiClient.Builder(mContext)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .addApiIfAvailable(Wearable.API)
-                .build();
+        if (mTransport.isConnected()) {
+            send(today);
+            return;
+        }
+        if (mPending.size() == MAX_PENDING) {
+            mPending.removeFirst();
+        }
+        mPending.addLast(today);
+        if (!mTransport.isConnecting()) {
+            mTransport.connect();
+        }
+    }
 
-        mGoogleApiClient.connect();
+    /**
+     * Drops the connection and whatever wasn't sent yet. The client can't be used afterwards,
+     * {@link #getInstance(Context)} creates a new one.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            mShutdown = true;
+            mHandler.removeCallbacks(mIdleDisconnect);
+            mPending.clear();
+            mTransport.disconnect();
+        }
+        synchronized (WatchFaceClient.class) {
+            if (sInstance == this) {
+                sInstance = null;
+            }
+        }
     }
 
     @Override
-    public void onConnected(@Nullable Bundle bundle) {
-        Log.d(LOG_TAG,"onConnected");
-        sendData();
+    public synchronized void onConnected() {
+        Log.d(LOG_TAG, "onConnected, sending " + mPending.size() + " pending");
+        while (!mPending.isEmpty()) {
+            send(mPending.removeFirst());
+        }
     }
 
     @Override
-    public void onConnectionSuspended(int i) {
-        // Do nothing
-        Log.d(LOG_TAG,"Connection suspended");
+    public synchronized void onConnectionFailed() {
+        // The next publish tries again
+        Log.d(LOG_TAG, "Connection failed, dropping " + mPending.size() + " pending");
+        mPending.clear();
     }
 
-    @Override
-    public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
-        // Do nothing
-        Log.d(LOG_TAG,"Connection failed");
+    private synchronized void disconnectIfIdle() {
+        if (mShutdown) {
+            return;
+        }
+        if (!mPending.isEmpty()) {
+            // Still waiting for the connection
+            mHandler.postDelayed(mIdleDisconnect, mIdleDisconnectMillis);
+            return;
+        }
+        Log.d(LOG_TAG, "Idle, disconnecting");
+        mTransport.disconnect();
+    }
+
+    private void send(TodayForecast today) {
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(PATH_WEATHER_DATA).setUrgent();
+        DataMap dataMap = putDataMapRequest.getDataMap();
+
+        // The same weather makes the same data item, which the watch isn't bothered with again
+        Asset asset = mIconAssets.getAsset(today.weatherId);
+        if (asset != null) {
+            dataMap.putAsset(KEY_WEATHER_ICON, asset);
+            dataMap.putString(KEY_WEATHER_ICON_ID, mIconAssets.getIconId(today.weatherId));
+        }
+        dataMap.putString(KEY_MAX_TEMP, Utility.formatTemperature(mContext, today.high));
+        dataMap.putString(KEY_MIN_TEMP, Utility.formatTemperature(mContext, today.low));
+
+        PutDataRequest putDataRequest = putDataMapRequest.asPutDataRequest();
+        mTransport.putDataItem(putDataRequest);
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearable;
+
+import com.google.android.gms.wearable.PutDataRequest;
+
+/**
+ * The connection data items are sent to the watch over. Connecting is asynchronous, the
+ * outcome is reported to the {@link Callbacks}.
+ */
+interface WearableTransport {
+
+    interface Callbacks {
+        void onConnected();
+
+        void onConnectionFailed();
+    }
+
+    void setCallbacks(Callbacks callbacks);
+
+    /**
+     * Starts connecting, reusing the same underlying client every time.
+     */
+    void connect();
+
+    boolean isConnected();
+
+    boolean isConnecting();
+
+    /**
+     * Sends a data item. Only valid while connected.
+     */
+    void putDataItem(PutDataRequest request);
+
+    void disconnect();
+}
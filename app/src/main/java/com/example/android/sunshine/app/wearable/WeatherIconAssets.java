@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wearable;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.Utility;
+import com.google.android.gms.wearable.Asset;
+
+/**
+ * The weather icons sent to the watch, encoded once per art resource. Every weather id of a
+ * condition gets the same Asset, so unchanged conditions send the same bytes, which the Data
+ * API recognizes by their digest instead of transferring them again.
+ */
+class WeatherIconAssets {
+
+    private final Context mContext;
+    // By art resource id
+    private final SparseArray<Asset> mAssets = new SparseArray<Asset>();
+
+    WeatherIconAssets(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * @return the id the watch tells the icon of the weather apart by, or null if there
+     * is no icon for it
+     */
+    String getIconId(int weatherId) {
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        if (artResourceId == -1) {
+            return null;
+        }
+        // Unlike the resource id, the name stays the same across builds of the app
+        return mContext.getResources().getResourceEntryName(artResourceId);
+    }
+
+    /**
+     * @return the icon of the weather, or null if there is none
+     */
+    synchronized Asset getAsset(int weatherId) {
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        if (artResourceId == -1) {
+            return null;
+        }
+        Asset asset = mAssets.get(artResourceId);
+        if (asset == null) {
+            Bitmap icon = BitmapFactory.decodeResource(mContext.getResources(), artResourceId);
+            asset = Utility.createAssetFromBitmap(icon);
+            icon.recycle();
+            mAssets.put(artResourceId, asset);
+        }
+        return asset;
+    }
+}
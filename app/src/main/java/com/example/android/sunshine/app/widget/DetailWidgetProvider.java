@@ -15,6 +15,7 @@ import android.widget.RemoteViews;
 import com.example.android.sunshine.app.DetailActivity;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.ForecastChange;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -58,6 +59,13 @@ public class DetailWidgetProvider extends AppWidgetProvider {
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
+            // Rows whose day didn't change are kept, and if none did the list isn't touched
+            ForecastChange change = ForecastChange.fromIntent(intent);
+            boolean affected = DetailWidgetRemoteViewsService.addPendingChange(context, change);
+            WidgetUpdateStats.recordUpdate(WidgetUpdateStats.WIDGET_DETAIL, affected);
+            if (!affected) {
+                return;
+            }
             AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
             int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
                     new ComponentName(context, getClass()));
@@ -1,24 +1,27 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.util.Log;
-import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherArtLoader;
+import com.example.android.sunshine.app.data.ForecastChange;
 import com.example.android.sunshine.app.data.WeatherContract;
 
-import java.util.concurrent.ExecutionException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -42,10 +45,83 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
+    // What the rows were last built for, and the days changed since
+    private static String sBuiltSignature;
+    private static ForecastChange sPendingChange = ForecastChange.NOTHING;
+
+    /**
+     * Keeps the change for the next time the list is filled, so only the rows of the changed
+     * days are built again.
+     *
+     * @return whether the list shows any of the changed days, or has to be built anew anyway
+     */
+    static synchronized boolean addPendingChange(Context context, ForecastChange change) {
+        String location = Utility.getPreferredLocation(context);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        if (!getRowsSignature(context, location, today).equals(sBuiltSignature)
+                || change.affectsFrom(location, today)) {
+            sPendingChange = sPendingChange.merge(change);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the days changed since the list was last filled
+     */
+    private static synchronized ForecastChange takePendingChange(String builtSignature) {
+        ForecastChange change = sPendingChange;
+        sPendingChange = ForecastChange.NOTHING;
+        sBuiltSignature = builtSignature;
+        return change;
+    }
+
+    /**
+     * @return everything besides the weather itself the rows depend on, rows built for another
+     * signature can't be kept
+     */
+    private static String getRowsSignature(Context context, String location, long today) {
+        // Today and tomorrow are named as such, so the rows change with the day
+        return location + "|" + today + "|" + Utility.isMetric(context) + "|"
+                + Utility.usingLocalGraphics(context);
+    }
+
+    /**
+     * One row of the list, with everything it shows read and formatted already.
+     */
+    static final class Row {
+        final long id;
+        final long date;
+        final String formattedDate;
+        final String description;
+        final String formattedMaxTemperature;
+        final String formattedMinTemperature;
+        final int weatherArtResourceId;
+        // Null if the local art is shown
+        final Bitmap weatherArtImage;
+        final Uri weatherUri;
+
+        Row(long id, long date, String formattedDate, String description,
+            String formattedMaxTemperature, String formattedMinTemperature,
+            int weatherArtResourceId, Bitmap weatherArtImage, Uri weatherUri) {
+            this.id = id;
+            this.date = date;
+            this.formattedDate = formattedDate;
+            this.description = description;
+            this.formattedMaxTemperature = formattedMaxTemperature;
+            this.formattedMinTemperature = formattedMinTemperature;
+            this.weatherArtResourceId = weatherArtResourceId;
+            this.weatherArtImage = weatherArtImage;
+            this.weatherUri = weatherUri;
+        }
+    }
+
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            // Replaced as a whole on every data set change, never modified
+            private volatile Row[] rows = new Row[0];
+            private String builtSignature;
 
             @Override
             public void onCreate() {
@@ -54,9 +130,6 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
-                }
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
                 // data. Therefore we need to clear (and finally restore) the calling identity so
@@ -65,81 +138,125 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
                         .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
+                Cursor data = getContentResolver().query(weatherForLocationUri,
                         FORECAST_COLUMNS,
                         null,
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+
+                long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+                String signature = getRowsSignature(DetailWidgetRemoteViewsService.this,
+                        location, today);
+                ForecastChange change = takePendingChange(signature);
+                // The rows of the days that didn't change are kept as they are
+                Map<Long, Row> keptRows = new HashMap<Long, Row>();
+                if (signature.equals(builtSignature) && !change.isEverything()) {
+                    for (Row row : rows) {
+                        if (!change.affects(location, row.date)) {
+                            keptRows.put(row.date, row);
+                        }
+                    }
+                }
+                builtSignature = signature;
+
+                if (data == null) {
+                    rows = new Row[0];
+                    return;
+                }
+                try {
+                    rows = readRows(data, location, keptRows);
+                } finally {
+                    // Nothing is read from it after this, so it isn't held across binder calls
+                    data.close();
+                }
+            }
+
+            /**
+             * Reads and formats every row of the data but the kept ones.
+             */
+            private Row[] readRows(Cursor data, String location, Map<Long, Row> keptRows) {
+                Context context = DetailWidgetRemoteViewsService.this;
+                boolean usingLocalGraphics = Utility.usingLocalGraphics(context);
+                int count = data.getCount();
+                Row[] readRows = new Row[count];
+                // The weather of the rows that aren't kept, by position
+                int[] weatherIds = new int[count];
+                Set<String> artUrls = new LinkedHashSet<String>();
+                for (int i = 0; i < count && data.moveToPosition(i); i++) {
+                    readRows[i] = keptRows.get(data.getLong(INDEX_WEATHER_DATE));
+                    WidgetUpdateStats.recordRow(readRows[i] == null);
+                    weatherIds[i] = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                    if (readRows[i] == null && !usingLocalGraphics) {
+                        artUrls.add(Utility.getArtUrlForWeatherCondition(context, weatherIds[i]));
+                    }
+                }
+
+                // Fetched here, all at once, so the art of every row isn't waited for one after
+                // the other
+                Map<String, Bitmap> art = artUrls.isEmpty()
+                        ? Collections.<String, Bitmap>emptyMap()
+                        : WeatherArtLoader.getInstance(context)
+                                .loadAll(WeatherArtLoader.SLOT_WIDGET_LIST_ICON, artUrls);
+
+                for (int i = 0; i < count && data.moveToPosition(i); i++) {
+                    if (readRows[i] != null) {
+                        continue;
+                    }
+                    int weatherId = weatherIds[i];
+                    long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+                    Bitmap weatherArtImage = usingLocalGraphics ? null
+                            : art.get(Utility.getArtUrlForWeatherCondition(context, weatherId));
+                    readRows[i] = new Row(data.getLong(INDEX_WEATHER_ID),
+                            dateInMillis,
+                            Utility.getFriendlyDayString(context, dateInMillis, false),
+                            data.getString(INDEX_WEATHER_DESC),
+                            Utility.formatTemperature(context,
+                                    data.getDouble(INDEX_WEATHER_MAX_TEMP)),
+                            Utility.formatTemperature(context,
+                                    data.getDouble(INDEX_WEATHER_MIN_TEMP)),
+                            Utility.getIconResourceForWeatherCondition(weatherId),
+                            weatherArtImage,
+                            WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                                    location, dateInMillis));
+                }
+                return readRows;
             }
 
             @Override
             public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
+                rows = new Row[0];
             }
 
             @Override
             public int getCount() {
-                return data == null ? 0 : data.getCount();
+                return rows.length;
             }
 
             @Override
             public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                Row[] rows = this.rows;
+                if (position < 0 || position >= rows.length || rows[position] == null) {
                     return null;
                 }
+                Row row = rows[position];
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
-                int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
-                String formattedDate = Utility.getFriendlyDayString(
-                        DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
-                if (weatherArtImage != null) {
-                    views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+                if (row.weatherArtImage != null) {
+                    views.setImageViewBitmap(R.id.widget_icon, row.weatherArtImage);
                 } else {
-                    views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+                    views.setImageViewResource(R.id.widget_icon, row.weatherArtResourceId);
                 }
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                    setRemoteContentDescription(views, description);
+                    setRemoteContentDescription(views, row.description);
                 }
-                views.setTextViewText(R.id.widget_date, formattedDate);
-                views.setTextViewText(R.id.widget_description, description);
-                views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-                views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+                views.setTextViewText(R.id.widget_date, row.formattedDate);
+                views.setTextViewText(R.id.widget_description, row.description);
+                views.setTextViewText(R.id.widget_high_temperature, row.formattedMaxTemperature);
+                views.setTextViewText(R.id.widget_low_temperature, row.formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                        locationSetting,
-                        dateInMillis);
-                fillInIntent.setData(weatherUri);
+                fillInIntent.setData(row.weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
                 return views;
             }
@@ -161,8 +278,10 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
+                Row[] rows = this.rows;
+                if (position >= 0 && position < rows.length && rows[position] != null) {
+                    return rows[position].id;
+                }
                 return position;
             }
 
@@ -15,39 +15,87 @@
  */
 package com.example.android.sunshine.app.widget;
 
+import android.annotation.TargetApi;
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.app.data.ForecastChange;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
  * Provider for a horizontally expandable widget showing today's weather.
  *
- * Delegates widget updating to {@link TodayWidgetIntentService} to ensure that
- * data retrieval is done on a background thread
+ * Delegates widget updating to {@link TodayWidgetRenderer} to ensure that data retrieval is
+ * done on a background thread
  */
 public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        update(context, appWidgetIds, null);
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // Only this widget's layout can have changed
+        TodayWidgetRenderer.getInstance(context).setOptions(appWidgetId, newOptions);
+        update(context, new int[]{appWidgetId}, null);
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        TodayWidgetRenderer.getInstance(context).forget(appWidgetIds);
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            // Only today's weather is shown, so a sync that didn't change it changes nothing,
+            // unless the widgets still show another day or location
+            ForecastChange change = ForecastChange.fromIntent(intent);
+            boolean affected = TodayWidgetRenderer.getInstance(context).needsUpdate(change);
+            WidgetUpdateStats.recordUpdate(WidgetUpdateStats.WIDGET_TODAY, affected);
+            if (!affected) {
+                return;
+            }
+            // Hand on the weather the sync sent along
+            update(context, null, intent);
+        }
+    }
+
+    /**
+     * @param appWidgetIds the widgets to update, or null for all of them
+     * @param intent       the broadcast carrying the weather, or null
+     */
+    private void update(Context context, int[] appWidgetIds, Intent intent) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            updateAsync(context, appWidgetIds, intent);
+        } else {
+            // Without goAsync the process may be gone once onReceive returns, so a service
+            // keeps it around while the widgets are updated
+            Intent serviceIntent = new Intent(context, TodayWidgetIntentService.class);
+            if (intent != null) {
+                serviceIntent.putExtras(intent);
+            }
+            context.startService(serviceIntent);
         }
     }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void updateAsync(Context context, int[] appWidgetIds, Intent intent) {
+        final PendingResult result = goAsync();
+        TodayWidgetRenderer.getInstance(context).render(appWidgetIds, intent, new Runnable() {
+            @Override
+            public void run() {
+                result.finish();
+            }
+        });
+    }
 }
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.SparseIntArray;
+import android.util.TypedValue;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastChange;
+import com.example.android.sunshine.app.data.TodayForecast;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Draws all Today widgets from one reading of today's weather. Which layout a widget gets is
+ * decided when its size changes and kept, and widgets with the same layout share their views
+ * and are updated together.
+ *
+ * Rendering happens on the renderer's own background thread, see {@link #render}, or on the
+ * calling one, see {@link #renderNow}.
+ */
+class TodayWidgetRenderer {
+    private static final String LOG_TAG = TodayWidgetRenderer.class.getSimpleName();
+
+    private static final int[] LAYOUT_IDS = {
+            R.layout.widget_today_small,
+            R.layout.widget_today,
+            R.layout.widget_today_large
+    };
+
+    private static TodayWidgetRenderer sInstance;
+
+    private final Context mContext;
+    private final int mDefaultWidth;
+    private final int mLargeWidth;
+    private final Handler mHandler;
+
+    // The layout of every widget by id, as decided from its size
+    private final SparseIntArray mLayoutIds = new SparseIntArray();
+
+    // What all widgets were last rendered for, and the date of the weather they show
+    private String mRenderedSignature;
+    private long mRenderedDate;
+
+    static synchronized TodayWidgetRenderer getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TodayWidgetRenderer(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    TodayWidgetRenderer(Context context) {
+        mContext = context;
+        Resources resources = context.getResources();
+        mDefaultWidth = resources.getDimensionPixelSize(R.dimen.widget_today_default_width);
+        mLargeWidth = resources.getDimensionPixelSize(R.dimen.widget_today_large_width);
+
+        HandlerThread thread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Decides the layout of the widget from its new options.
+     */
+    synchronized void setOptions(int appWidgetId, Bundle options) {
+        mLayoutIds.put(appWidgetId, getLayoutId(getWidgetWidth(options)));
+    }
+
+    /**
+     * Forgets the layouts of widgets that were removed.
+     */
+    synchronized void forget(int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            mLayoutIds.delete(appWidgetId);
+        }
+    }
+
+    /**
+     * @return whether the widgets need to be rendered again for the change, because it changed
+     * the weather they show or they were last rendered for another day or location
+     */
+    boolean needsUpdate(ForecastChange change) {
+        return needsUpdate(Utility.getPreferredLocation(mContext),
+                WeatherContract.normalizeDate(System.currentTimeMillis()),
+                Utility.isMetric(mContext), change);
+    }
+
+    synchronized boolean needsUpdate(String location, long today, boolean metric,
+                                     ForecastChange change) {
+        if (!getSignature(location, today, metric).equals(mRenderedSignature)) {
+            return true;
+        }
+        // The first stored day from today on is shown, which is today unless that is missing
+        return mRenderedDate == today
+                ? change.affects(location, today)
+                : change.affectsFrom(location, today);
+    }
+
+    /**
+     * Remembers what all widgets were rendered for.
+     *
+     * @param date the date of the weather they show
+     */
+    synchronized void setRendered(String location, long today, boolean metric, long date) {
+        mRenderedSignature = getSignature(location, today, metric);
+        mRenderedDate = date;
+    }
+
+    /**
+     * @return everything besides the weather itself the widgets depend on
+     */
+    private static String getSignature(String location, long today, boolean metric) {
+        return location + "|" + today + "|" + metric;
+    }
+
+    /**
+     * Updates the widgets on the renderer's thread.
+     *
+     * @param appWidgetIds the widgets to update, or null for all of them
+     * @param intent       the broadcast that asked for the update, for the weather it carries
+     * @param done         run once the widgets are updated, or null
+     */
+    void render(final int[] appWidgetIds, final Intent intent, final Runnable done) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    renderNow(appWidgetIds, intent);
+                } finally {
+                    if (done != null) {
+                        done.run();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Updates the widgets on the calling thread, which must not be the main thread.
+     *
+     * @param appWidgetIds the widgets to update, or null for all of them
+     * @param intent       the broadcast that asked for the update, for the weather it carries
+     */
+    void renderNow(int[] appWidgetIds, Intent intent) {
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(mContext);
+        boolean allWidgets = appWidgetIds == null;
+        long now = System.currentTimeMillis();
+        boolean metric = Utility.isMetric(mContext);
+        if (allWidgets) {
+            appWidgetIds = appWidgetManager.getAppWidgetIds(
+                    new ComponentName(mContext, TodayWidgetProvider.class));
+        }
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+
+        // After a sync the weather comes along, otherwise get today's data from the
+        // ContentProvider
+        TodayForecast today = TodayForecast.fromIntent(intent);
+        if (today == null || !today.isCurrent(mContext)) {
+            today = TodayForecast.load(mContext);
+        }
+        if (today == null) {
+            return;
+        }
+
+        // Group the widgets by layout, in the order of LAYOUT_IDS
+        int[] layoutCounts = new int[LAYOUT_IDS.length];
+        int[] layoutIndexes = new int[appWidgetIds.length];
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            layoutIndexes[i] = getLayoutIndex(getLayoutId(appWidgetManager, appWidgetIds[i]));
+            layoutCounts[layoutIndexes[i]]++;
+        }
+
+        for (int layout = 0; layout < LAYOUT_IDS.length; layout++) {
+            if (layoutCounts[layout] == 0) {
+                continue;
+            }
+            int[] layoutWidgetIds = new int[layoutCounts[layout]];
+            for (int i = 0, j = 0; i < appWidgetIds.length; i++) {
+                if (layoutIndexes[i] == layout) {
+                    layoutWidgetIds[j++] = appWidgetIds[i];
+                }
+            }
+            // Tell the AppWidgetManager to update all widgets with this layout at once
+            appWidgetManager.updateAppWidget(layoutWidgetIds,
+                    createViews(LAYOUT_IDS[layout], today));
+        }
+        if (allWidgets) {
+            setRendered(today.locationSetting, WeatherContract.normalizeDate(now), metric,
+                    today.date);
+        }
+    }
+
+    private RemoteViews createViews(int layoutId, TodayForecast today) {
+        RemoteViews views = new RemoteViews(mContext.getPackageName(), layoutId);
+
+        // Add the data to the RemoteViews
+        views.setImageViewResource(R.id.widget_icon,
+                Utility.getArtResourceForWeatherCondition(today.weatherId));
+        // Content Descriptions for RemoteViews were only added in ICS MR1
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, today.description);
+        }
+        views.setTextViewText(R.id.widget_description, today.description);
+        views.setTextViewText(R.id.widget_high_temperature,
+                Utility.formatTemperature(mContext, today.high));
+        views.setTextViewText(R.id.widget_low_temperature,
+                Utility.formatTemperature(mContext, today.low));
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(mContext, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(mContext, 0, launchIntent, 0);
+        views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+        return views;
+    }
+
+    /**
+     * @return the kept layout of the widget, decided from its current options if there is none
+     */
+    synchronized int getLayoutId(AppWidgetManager appWidgetManager, int appWidgetId) {
+        int layoutId = mLayoutIds.get(appWidgetId);
+        if (layoutId == 0) {
+            layoutId = getLayoutId(getWidgetWidth(appWidgetManager, appWidgetId));
+            mLayoutIds.put(appWidgetId, layoutId);
+        }
+        return layoutId;
+    }
+
+    /**
+     * Finds the correct layout based on the widget's width
+     */
+    int getLayoutId(int widgetWidth) {
+        if (widgetWidth >= mLargeWidth) {
+            return R.layout.widget_today_large;
+        } else if (widgetWidth >= mDefaultWidth) {
+            return R.layout.widget_today;
+        } else {
+            return R.layout.widget_today_small;
+        }
+    }
+
+    private static int getLayoutIndex(int layoutId) {
+        for (int i = 0; i < LAYOUT_IDS.length; i++) {
+            if (LAYOUT_IDS[i] == layoutId) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown layout " + layoutId);
+    }
+
+    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
+        // Prior to Jelly Bean, widgets were always their default size
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return mDefaultWidth;
+        }
+        // For Jelly Bean and higher devices, widgets can be resized - the current size can be
+        // retrieved from the newly added App Widget Options
+        return getWidgetWidth(getAppWidgetOptions(appWidgetManager, appWidgetId));
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static Bundle getAppWidgetOptions(AppWidgetManager appWidgetManager,
+                                              int appWidgetId) {
+        return appWidgetManager.getAppWidgetOptions(appWidgetId);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private int getWidgetWidth(Bundle options) {
+        if (options != null && options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
+            int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+            // The width returned is in dp, but we'll convert it to pixels to match the other widths
+            return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
+                    mContext.getResources().getDisplayMetrics());
+        }
+        return mDefaultWidth;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private static void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts how often the widgets were updated after a sync and how often the update was skipped
+ * because nothing they show changed, and how many detail rows were rebuilt or reused. The counts
+ * are kept in memory for the life of the process.
+ */
+public class WidgetUpdateStats {
+    private static final String LOG_TAG = WidgetUpdateStats.class.getSimpleName();
+
+    public static final String WIDGET_TODAY = "today";
+    public static final String WIDGET_DETAIL = "detail";
+
+    private static final Map<String, int[]> sUpdates = new HashMap<String, int[]>();
+    private static int sRowsRebuilt;
+    private static int sRowsReused;
+
+    private WidgetUpdateStats() {
+    }
+
+    static synchronized void recordUpdate(String widget, boolean performed) {
+        int[] counts = sUpdates.get(widget);
+        if (counts == null) {
+            counts = new int[2];
+            sUpdates.put(widget, counts);
+        }
+        counts[performed ? 0 : 1]++;
+        Log.d(LOG_TAG, (performed ? "Updated " : "Skipped ") + widget + " widgets, "
+                + counts[0] + " updated and " + counts[1] + " skipped so far");
+    }
+
+    static synchronized void recordRow(boolean rebuilt) {
+        if (rebuilt) {
+            sRowsRebuilt++;
+        } else {
+            sRowsReused++;
+        }
+    }
+
+    /**
+     * @return how often the widgets were updated after a sync
+     */
+    public static synchronized int getPerformedCount(String widget) {
+        int[] counts = sUpdates.get(widget);
+        return counts == null ? 0 : counts[0];
+    }
+
+    /**
+     * @return how often a sync changed nothing the widgets show, so they weren't updated
+     */
+    public static synchronized int getSkippedCount(String widget) {
+        int[] counts = sUpdates.get(widget);
+        return counts == null ? 0 : counts[1];
+    }
+
+    /**
+     * @return how many detail widget rows were built from the data
+     */
+    public static synchronized int getRowsRebuilt() {
+        return sRowsRebuilt;
+    }
+
+    /**
+     * @return how many detail widget rows were kept from before
+     */
+    public static synchronized int getRowsReused() {
+        return sRowsReused;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestUpdateScheduler extends AndroidTestCase {
+
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // Some minute in the past, the scheduler only cares about the offset into it
+    private static final long MINUTE_START = 24000000L * MINUTE_MILLIS;
+
+    public void testFaceWithoutSecondsUpdatesEveryMinute() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(mContext.getResources());
+        assertEquals("Error: The time is shown without seconds, so it only changes every minute",
+                MINUTE_MILLIS, renderer.getUpdatePeriodMillis());
+    }
+
+    public void testUpdatesAreAlignedToTheMinute() {
+        FakeClock clock = new FakeClock();
+        UpdateScheduler scheduler = new UpdateScheduler(clock, MINUTE_MILLIS);
+
+        clock.now = MINUTE_START + 1;
+        assertEquals(MINUTE_MILLIS - 1, scheduler.getDelayMillis());
+
+        clock.now = MINUTE_START + 45 * 1000;
+        assertEquals(15 * 1000, scheduler.getDelayMillis());
+
+        clock.now = MINUTE_START + MINUTE_MILLIS - 1;
+        assertEquals(1, scheduler.getDelayMillis());
+
+        clock.now = MINUTE_START;
+        assertEquals("Error: An update right on the minute should wait for the next one",
+                MINUTE_MILLIS, scheduler.getDelayMillis());
+    }
+
+    public void testOneUpdatePerMinute() {
+        FakeClock clock = new FakeClock();
+        UpdateScheduler scheduler = new UpdateScheduler(clock, MINUTE_MILLIS);
+
+        // Run the timer the way the engine does for an hour, starting mid minute
+        clock.now = MINUTE_START + 12345;
+        int updates = 0;
+        while (clock.now < MINUTE_START + 60 * MINUTE_MILLIS) {
+            clock.now += scheduler.getDelayMillis();
+            assertEquals("Error: Update off the minute", 0, clock.now % MINUTE_MILLIS);
+            updates++;
+        }
+        assertEquals(60, updates);
+    }
+
+    public void testPeriodMustBePositive() {
+        try {
+            new UpdateScheduler(new FakeClock(), 0);
+            fail("Error: A period of 0 should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static class FakeClock implements UpdateScheduler.Clock {
+        long now;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.TimeZone;
+
+/*
+    Compares drawing frames over the pre-rendered layer with redrawing the whole watch face for
+    every frame, and the CPU time of interactive frames with ambient ones. The timings depend on
+    the device, so the benchmarks mostly log them; only ambient frames are held to their budget,
+    AmbientRenderer.FRAME_BUDGET_MICROS. Results are written to logcat under this class name,
+    e.g.
+
+        adb logcat -s TestWatchFaceFrameBenchmark
+ */
+public class TestWatchFaceFrameBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWatchFaceFrameBenchmark.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    private static final int WARM_UP_FRAMES = 50;
+    private static final int FRAMES = 1000;
+    // A frame a second, as in interactive mode
+    private static final long FRAME_MILLIS = 1000;
+
+    private WatchFaceRenderer mRenderer;
+    private Canvas mCanvas;
+    private Rect mBounds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext.getResources());
+        mRenderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+        mRenderer.setTemperatures("21\u00B0", "12\u00B0");
+        mRenderer.setWeatherIcon(Bitmap.createBitmap(mRenderer.getWeatherIconHeight(),
+                mRenderer.getWeatherIconHeight(), Bitmap.Config.ARGB_8888));
+
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRenderer.releaseLayer();
+        super.tearDown();
+    }
+
+    public void testLayerIsDrawnOnlyWhenItChanges() {
+        long now = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, now);
+            now += FRAME_MILLIS;
+        }
+        assertEquals("Error: The layer should only be drawn for the first frame",
+                1, mRenderer.getLayerRedraws());
+
+        mRenderer.setTemperatures("22\u00B0", "12\u00B0");
+        mRenderer.draw(mCanvas, mBounds, now);
+        assertEquals(2, mRenderer.getLayerRedraws());
+
+        mRenderer.setAmbient(true);
+        assertFalse("Error: The layer should be freed in ambient mode", mRenderer.hasLayer());
+        mRenderer.draw(mCanvas, mBounds, now);
+        mRenderer.draw(mCanvas, mBounds, now + FRAME_MILLIS);
+        // The next day has another date, which the layer only needs once it's shown again
+        now += 24 * 60 * 60 * 1000;
+        mRenderer.draw(mCanvas, mBounds, now);
+        assertEquals("Error: Ambient frames should not touch the layer",
+                2, mRenderer.getLayerRedraws());
+        assertFalse(mRenderer.hasLayer());
+
+        mRenderer.setAmbient(false);
+        mRenderer.draw(mCanvas, mBounds, now);
+        assertEquals(3, mRenderer.getLayerRedraws());
+    }
+
+    public void testBenchmarkLayeredVersusFullRedraw() {
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, i * FRAME_MILLIS);
+            mRenderer.drawWithoutLayer(mCanvas, mBounds, i * FRAME_MILLIS);
+        }
+
+        long fullRedraw = measure(false);
+        long layered = measure(true);
+
+        Log.i(LOG_TAG, FRAMES + " frames of " + SIZE + "x" + SIZE + ", per frame: full redraw "
+                + fullRedraw + "us, layered " + layered + "us");
+    }
+
+    public void testBenchmarkCpuTimePerMode() {
+        mRenderer.setDisplayProperties(true, true);
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            mRenderer.setAmbient(false);
+            mRenderer.draw(mCanvas, mBounds, i * FRAME_MILLIS);
+            mRenderer.setAmbient(true);
+            mRenderer.draw(mCanvas, mBounds, i * FRAME_MILLIS);
+        }
+
+        mRenderer.setAmbient(false);
+        long interactive = measureCpuTime();
+        mRenderer.setAmbient(true);
+        long ambient = measureCpuTime();
+
+        Log.i(LOG_TAG, FRAMES + " frames of " + SIZE + "x" + SIZE + ", CPU time per frame: "
+                + "interactive " + interactive + "us, ambient " + ambient + "us");
+        assertTrue("Error: An ambient frame took " + ambient + "us, over the budget of "
+                        + AmbientRenderer.FRAME_BUDGET_MICROS + "us",
+                ambient <= AmbientRenderer.FRAME_BUDGET_MICROS);
+    }
+
+    /**
+     * @return the average CPU time of a frame drawn by draw() in microseconds
+     */
+    private long measureCpuTime() {
+        Runtime.getRuntime().gc();
+        long start = Debug.threadCpuTimeNanos();
+        for (int i = 0; i < FRAMES; i++) {
+            // A minute apart, as in ambient mode
+            mRenderer.draw(mCanvas, mBounds, i * 60 * FRAME_MILLIS);
+        }
+        return (Debug.threadCpuTimeNanos() - start) / 1000 / FRAMES;
+    }
+
+    /**
+     * @return the average frame time in microseconds
+     */
+    private long measure(boolean layered) {
+        Runtime.getRuntime().gc();
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            if (layered) {
+                mRenderer.draw(mCanvas, mBounds, i * FRAME_MILLIS);
+            } else {
+                mRenderer.drawWithoutLayer(mCanvas, mBounds, i * FRAME_MILLIS);
+            }
+        }
+        return (System.nanoTime() - start) / 1000 / FRAMES;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.pm.ApplicationInfo;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/*
+    Draws simulated frames the way the engine does and counts what they allocate, along with
+    the text formatting and layer drawing they do, the only work of a frame that should
+    allocate. Results are written to logcat under this class name, e.g.
+
+        adb logcat -s TestWatchFaceRenderer
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWatchFaceRenderer.class.getSimpleName();
+
+    private static final int FRAMES = 1000;
+    private static final int SIZE = 320;
+
+    private WatchFaceRenderer mRenderer;
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private long mStartMillis;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext.getResources());
+        mRenderer.setTimeZone(TimeZone.getTimeZone("America/Los_Angeles"));
+        mRenderer.setTemperatures("21\u00B0", "12\u00B0");
+        mRenderer.setWeatherIcon(Bitmap.createBitmap(mRenderer.getWeatherIconHeight(),
+                mRenderer.getWeatherIconHeight(), Bitmap.Config.ARGB_8888));
+
+        Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(bitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+        calendar.set(2016, Calendar.MARCH, 14, 23, 58, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        mStartMillis = calendar.getTimeInMillis();
+    }
+
+    public void testTextIsFormattedOncePerMinute() {
+        mRenderer.draw(mCanvas, mBounds, mStartMillis);
+        String time = mRenderer.getTimeText();
+        String date = mRenderer.getDateText();
+        assertEquals("23:58", time);
+
+        mRenderer.draw(mCanvas, mBounds, mStartMillis + 59 * 1000);
+        assertSame("Error: The time was formatted again within the minute",
+                time, mRenderer.getTimeText());
+
+        mRenderer.draw(mCanvas, mBounds, mStartMillis + 60 * 1000);
+        assertEquals("23:59", mRenderer.getTimeText());
+        assertSame("Error: The date was formatted again within the day",
+                date, mRenderer.getDateText());
+
+        mRenderer.draw(mCanvas, mBounds, mStartMillis + 2 * 60 * 1000);
+        assertEquals("00:00", mRenderer.getTimeText());
+        assertFalse("Error: The date should change at midnight", date.equals(mRenderer.getDateText()));
+
+        // Formatted again for the new time zone
+        mRenderer.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+        mRenderer.draw(mCanvas, mBounds, mStartMillis + 2 * 60 * 1000);
+        assertEquals("03:00", mRenderer.getTimeText());
+    }
+
+    public void testFramesDoNotAllocate() {
+        // Frames a twentieth of a second apart all fall within the same minute, so after the
+        // first one they neither allocate, format text nor draw the layer
+        mRenderer.draw(mCanvas, mBounds, mStartMillis);
+        int textFormats = mRenderer.getTextFormats();
+        int layerRedraws = mRenderer.getLayerRedraws();
+        long allocations = countAllocations(50);
+        if (allocations >= 0) {
+            Log.i(LOG_TAG, FRAMES + " frames within a minute: " + allocations + " allocations");
+            assertEquals("Error: Drawing a frame within the minute should not allocate",
+                    0, allocations);
+        }
+        assertEquals("Error: Drawing a frame within the minute should not format the time",
+                textFormats, mRenderer.getTextFormats());
+        assertEquals("Error: Drawing a frame within the minute should not draw the layer",
+                layerRedraws, mRenderer.getLayerRedraws());
+
+        // Once a second, as in interactive mode, only the minute changes format the time, and
+        // only midnight changes the layer
+        allocations = countAllocations(1000);
+        int minutes = (FRAMES - 1) / 60;
+        Log.i(LOG_TAG, FRAMES + " frames a second apart: " + allocations + " allocations, time "
+                + "formatted " + (mRenderer.getTextFormats() - textFormats) + " times over "
+                + minutes + " minute changes");
+        assertEquals(textFormats + minutes, mRenderer.getTextFormats());
+        assertEquals(layerRedraws + 1, mRenderer.getLayerRedraws());
+    }
+
+    public void testBurnInProtectionMovesAmbientFace() {
+        mRenderer.setAmbient(true);
+        Bitmap unprotected = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap protectedFace = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+
+        // The face is in place for one minute at most, never for two in a row
+        boolean moved = false;
+        for (int minute = 0; minute < 2; minute++) {
+            long now = mStartMillis + minute * 60 * 1000;
+            mRenderer.setDisplayProperties(true, false);
+            mRenderer.draw(new Canvas(unprotected), mBounds, now);
+            mRenderer.setDisplayProperties(true, true);
+            mRenderer.draw(new Canvas(protectedFace), mBounds, now);
+            moved |= !unprotected.sameAs(protectedFace);
+        }
+        assertTrue("Error: The face should move with burn-in protection", moved);
+    }
+
+    /**
+     * Draws the frames and counts the objects allocated on this thread meanwhile. Debug's
+     * allocation counting is deprecated, but it is still the only count of the
+     * real allocations a test can assert on, and it works on both Dalvik and ART.
+     *
+     * @return the number of allocations, or -1 if they can't be counted because the app
+     * isn't debuggable
+     */
+    @SuppressWarnings("deprecation")
+    private long countAllocations(long frameMillis) {
+        if ((mContext.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) == 0) {
+            for (int i = 0; i < FRAMES; i++) {
+                mRenderer.draw(mCanvas, mBounds, mStartMillis + i * frameMillis);
+            }
+            return -1;
+        }
+        Runtime.getRuntime().gc();
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < FRAMES; i++) {
+            mRenderer.draw(mCanvas, mBounds, mStartMillis + i * frameMillis);
+        }
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+}
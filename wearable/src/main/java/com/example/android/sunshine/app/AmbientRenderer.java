@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the watch face in ambient mode, at most once a minute and as cheaply as possible: the
+ * time and date in white on black, with no bitmaps, no weather and no offscreen layer. On
+ * low-bit displays the text isn't anti-aliased, and with burn-in protection the whole face
+ * moves a few pixels every minute so the same pixels aren't lit all the time.
+ */
+class AmbientRenderer {
+    /**
+     * The CPU time an ambient frame may take. Two lines of text should be drawn in well under
+     * that; a frame over it means ambient mode is spending more than it saves.
+     */
+    static final long FRAME_BUDGET_MICROS = 2000;
+
+    private static final Typeface NORMAL_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Where the face is moved to minute after minute, in units of mShiftPx
+    private static final int[] SHIFT_X = {0, 1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] SHIFT_Y = {0, 0, 1, 1, 1, 0, -1, -1, -1};
+    private static final float SHIFT_DP = 3;
+
+    private final Paint mTimeTextPaint;
+    private final Paint mDateTextPaint;
+    private final float mYOffsetTime;
+    private final float mYOffsetDate;
+    private final float mShiftPx;
+
+    private boolean mBurnInProtection;
+
+    AmbientRenderer(Resources resources) {
+        mYOffsetTime = resources.getDimension(R.dimen.offset_time_text);
+        mYOffsetDate = resources.getDimension(R.dimen.offset_date_text);
+        mShiftPx = SHIFT_DP * resources.getDisplayMetrics().density;
+
+        // Same size and typeface as in interactive mode, so the text is as wide in both
+        mTimeTextPaint = createTextPaint(resources.getDimension(R.dimen.text_size_time));
+        mDateTextPaint = createTextPaint(resources.getDimension(R.dimen.text_size_date));
+    }
+
+    private static Paint createTextPaint(float textSize) {
+        Paint paint = new Paint();
+        paint.setColor(Color.WHITE);
+        paint.setTextSize(textSize);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * @param lowBitAmbient    whether the display only has a few colors without anti-aliasing
+     * @param burnInProtection whether pixels lit for long burn in
+     */
+    void setDisplayProperties(boolean lowBitAmbient, boolean burnInProtection) {
+        mTimeTextPaint.setAntiAlias(!lowBitAmbient);
+        mDateTextPaint.setAntiAlias(!lowBitAmbient);
+        mBurnInProtection = burnInProtection;
+    }
+
+    /**
+     * @param timeTextWidth how wide the time is with the interactive paint
+     * @param dateTextWidth how wide the date is with the interactive paint
+     */
+    void draw(Canvas canvas, Rect bounds, long nowMillis,
+              String timeText, float timeTextWidth, String dateText, float dateTextWidth) {
+        canvas.drawColor(Color.BLACK);
+
+        float dx = 0;
+        float dy = 0;
+        if (mBurnInProtection) {
+            int shift = (int) ((nowMillis / MINUTE_MILLIS) % SHIFT_X.length);
+            dx = SHIFT_X[shift] * mShiftPx;
+            dy = SHIFT_Y[shift] * mShiftPx;
+        }
+        canvas.drawText(timeText, bounds.centerX() - timeTextWidth / 2 + dx, mYOffsetTime + dy, mTimeTextPaint);
+        canvas.drawText(dateText, bounds.centerX() - dateTextWidth / 2 + dx, mYOffsetDate + dy, mDateTextPaint);
+    }
+}
@@ -20,16 +20,11 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
-import android.os.Build;
 import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Message;
 import android.support.annotation.NonNull;
@@ -56,34 +51,41 @@ import com.google.android.gms.wearable.Wearable;
 
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.TimeZone;
-import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face with the weather. The time is drawn whenever it changes, once a minute. In
+ * ambient mode only the time and date are drawn, without anti-aliasing on devices with low-bit
+ * ambient mode and moving a little every minute on devices that need burn-in protection.
  */
 public class MyWatchFace extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
     /**
-     * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
+     * Handler message id for updating the time periodically in interactive mode.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final int MSG_UPDATE_TIME = 0;
 
     /**
-     * Handler message id for updating the time periodically in interactive mode.
+     * Decoded weather icons, shared by the engines so a new one doesn't decode them again.
      */
-    private static final int MSG_UPDATE_TIME = 0;
+    private final WeatherIconCache mIconCache = new WeatherIconCache(WeatherIconCache.MAX_BYTES);
 
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mIconCache.trimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        mIconCache.trimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
     private static class EngineHandler extends Handler {
         private final WeakReference<MyWatchFace.Engine> mWeakReference;
 
@@ -115,35 +117,24 @@ public class MyWatchFace extends CanvasWatchFaceService {
         final static String KEY_MAX_TEMP = "max_temp";
         final static String KEY_MIN_TEMP = "min_temp";
         final static String KEY_WEATHER_ICON= "weather_icon";
+        final static String KEY_WEATHER_ICON_ID = "weather_icon_id";
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
-        int mBackgroundColor;
-        Paint mTimeTextPaint;
-        Paint mDateTextPaint;
-        Paint mDateTextPaintAmbient;
-        Paint mWeatherTextPaint;
+        WatchFaceRenderer mRenderer;
+        UpdateScheduler mUpdateScheduler;
         boolean mAmbient;
         boolean mBurnInProtection;
         boolean mLowBitAmbient;
-        Calendar mCalendar;
 
-        float mYOffsetTime;
-        float mYOffsetDate;
-        float mYOffsetLine;
-        float mYOffsetWeather;
-
-        final SimpleDateFormat mSdfTime = new SimpleDateFormat("HH:mm");
-        final SimpleDateFormat mSdfDate = new SimpleDateFormat("EEE, MMM dd yyyy");
-
-        String mMaxTemperature;
-        String mMinTemperature;
         Bitmap mWeatherIcon;
+        // Which icon mWeatherIcon shows, so an unchanged one isn't fetched again
+        String mWeatherIconId;
 
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.setTimeZone(TimeZone.getDefault());
                 invalidate();
             }
         };
@@ -164,28 +155,9 @@ public class MyWatchFace extends CanvasWatchFaceService {
                     .setHotwordIndicatorGravity(Gravity.CENTER_HORIZONTAL | Gravity.TOP | Gravity.RIGHT)
                     .build());
 
-            Resources resources = MyWatchFace.this.getResources();
-            mYOffsetTime = resources.getDimension(R.dimen.offset_time_text);
-            mYOffsetDate = resources.getDimension(R.dimen.offset_date_text);
-            mYOffsetLine = resources.getDimension(R.dimen.offset_line);
-            mYOffsetWeather = resources.getDimension(R.dimen.offset_weather_text);
-
-            mCalendar = Calendar.getInstance();
-
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                mBackgroundColor = getResources().getColor(R.color.primary, null);
-                mTimeTextPaint = createTextPaint(resources.getColor(R.color.white, null), resources.getDimension(R.dimen.text_size_time));
-                mDateTextPaint = createTextPaint(resources.getColor(R.color.primary_light, null), resources.getDimension(R.dimen.text_size_date));
-                mDateTextPaintAmbient = createTextPaint(resources.getColor(R.color.white, null), resources.getDimension(R.dimen.text_size_date));
-                mWeatherTextPaint = createTextPaint(resources.getColor(R.color.primary_light, null), resources.getDimension(R.dimen.text_size_weather));
-            }
-            else {
-                mBackgroundColor = getResources().getColor(R.color.primary);
-                mTimeTextPaint = createTextPaint(resources.getColor(R.color.white), resources.getDimension(R.dimen.text_size_time));
-                mDateTextPaint = createTextPaint(resources.getColor(R.color.primary_light), resources.getDimension(R.dimen.text_size_date));
-                mDateTextPaintAmbient = createTextPaint(resources.getColor(R.color.white), resources.getDimension(R.dimen.text_size_date));
-                mWeatherTextPaint = createTextPaint(resources.getColor(R.color.primary_light), resources.getDimension(R.dimen.text_size_weather));
-            }
+            mRenderer = new WatchFaceRenderer(MyWatchFace.this.getResources());
+            mUpdateScheduler = new UpdateScheduler(UpdateScheduler.SYSTEM_CLOCK,
+                    mRenderer.getUpdatePeriodMillis());
 
             mGoogleApiClient = new GoogleApiClient.Builder(MyWatchFace.this)
                     .addConnectionCallbacks(this)
@@ -196,15 +168,6 @@ public class MyWatchFace extends CanvasWatchFaceService {
             mGoogleApiClient.connect();
         }
 
-        private Paint createTextPaint(int textColor, float textSize) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTextSize(textSize);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
@@ -214,11 +177,14 @@ public class MyWatchFace extends CanvasWatchFaceService {
                 connectDataListener();
 
                 // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.setTimeZone(TimeZone.getDefault());
             }
             else {
                 unregisterTimeZoneReceiver();
                 disconnectDataListener();
+
+                // Nothing is drawn while we aren't visible, the layer is drawn again once we are
+                mRenderer.releaseLayer();
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -268,6 +234,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
             mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            mRenderer.setDisplayProperties(mLowBitAmbient, mBurnInProtection);
         }
 
         @Override
@@ -276,11 +243,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-
-                if (mLowBitAmbient) {
-                    mTimeTextPaint.setAntiAlias(!inAmbientMode);
-                    mDateTextPaint.setAntiAlias(!inAmbientMode);
-                }
+                mRenderer.setAmbient(inAmbientMode);
 
                 invalidate();
             }
@@ -297,41 +260,24 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Background
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
+            if (!isInAmbientMode()) {
+                mRenderer.draw(canvas, bounds, System.currentTimeMillis());
+                return;
             }
-            else {
-                canvas.drawColor(mBackgroundColor);
-            }
-
-            // Time and date
-            mCalendar.setTimeInMillis(System.currentTimeMillis());
-            String time = mSdfTime.format((mCalendar.getTime()));
-            String date = mSdfDate.format((mCalendar.getTime())).toUpperCase();
-
-            canvas.drawText(time, bounds.centerX() - (mTimeTextPaint.measureText(time)) / 2, mYOffsetTime, mTimeTextPaint);
-            canvas.drawText(date, bounds.centerX() - (mDateTextPaint.measureText(date)) / 2, mYOffsetDate, isInAmbientMode() ? mDateTextPaintAmbient :mDateTextPaint);
-
-            // Weather info
-            if(!isInAmbientMode()) {
-                if (mMinTemperature != null && mMaxTemperature != null && mWeatherIcon != null) {
-
-                    canvas.drawLine(bounds.centerX() - 30, mYOffsetLine, bounds.centerX() + 30, mYOffsetLine, mDateTextPaint);
-
-                    float maxTempTextLenght = mWeatherTextPaint.measureText(mMaxTemperature) / 2;
-                    float xOffsetWeatherIcon = bounds.centerX() - (mWeatherIcon.getWidth() + (maxTempTextLenght / 2) + 20);
-
-                    canvas.drawBitmap(mWeatherIcon, xOffsetWeatherIcon, mYOffsetWeather - mWeatherIcon.getHeight(), null);
-                    canvas.drawText(mMaxTemperature, bounds.centerX() - (maxTempTextLenght), mYOffsetWeather, mWeatherTextPaint);
-                    canvas.drawText(mMinTemperature, bounds.centerX() + (maxTempTextLenght / 2) + 20, mYOffsetWeather, mWeatherTextPaint);
-                }
+            // Ambient frames are rare enough to be timed, so overruns show up in the log
+            long start = Debug.threadCpuTimeNanos();
+            mRenderer.draw(canvas, bounds, System.currentTimeMillis());
+            long micros = (Debug.threadCpuTimeNanos() - start) / 1000;
+            if (micros > AmbientRenderer.FRAME_BUDGET_MICROS) {
+                Log.w(LOG_TAG, "Ambient frame took " + micros + "us of CPU time, over the "
+                        + AmbientRenderer.FRAME_BUDGET_MICROS + "us budget");
             }
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mRenderer.releaseLayer();
             super.onDestroy();
         }
 
@@ -361,8 +307,7 @@ public class MyWatchFace extends CanvasWatchFaceService {
             invalidate();
 
             if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                long delayMs = mUpdateScheduler.getDelayMillis();
 
                 mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
             }
@@ -409,18 +354,38 @@ public class MyWatchFace extends CanvasWatchFaceService {
 
         private void updateWeather(DataMap dataMap) {
             Asset asset = dataMap.containsKey(KEY_WEATHER_ICON) ? dataMap.getAsset(KEY_WEATHER_ICON) : null;
-            mMaxTemperature = dataMap.containsKey(KEY_MAX_TEMP) ? dataMap.getString(KEY_MAX_TEMP) : "";
-            mMinTemperature = dataMap.containsKey(KEY_MIN_TEMP) ? dataMap.getString(KEY_MIN_TEMP) : "";
-
+            final String iconId = dataMap.getString(KEY_WEATHER_ICON_ID);
+            mRenderer.setTemperatures(
+                    dataMap.containsKey(KEY_MAX_TEMP) ? dataMap.getString(KEY_MAX_TEMP) : "",
+                    dataMap.containsKey(KEY_MIN_TEMP) ? dataMap.getString(KEY_MIN_TEMP) : "");
+            final int iconHeight = mRenderer.getWeatherIconHeight();
+
+            if (iconId != null && iconId.equals(mWeatherIconId) && mWeatherIcon != null) {
+                // Only the temperatures changed, the icon shown is still the right one
+                invalidate();
+                return;
+            }
+            Bitmap cachedIcon = mIconCache.get(iconId, iconHeight);
+            if (cachedIcon != null) {
+                // Shown before, no need to fetch and decode it again
+                mWeatherIcon = cachedIcon;
+                mWeatherIconId = iconId;
+                mRenderer.setWeatherIcon(cachedIcon);
+                invalidate();
+                return;
+            }
             if(asset != null) {
                 Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset).setResultCallback(new ResultCallbacks<DataApi.GetFdForAssetResult>() {
                     @Override
                     public void onSuccess(@NonNull DataApi.GetFdForAssetResult getFdForAssetResult) {
                         InputStream stream = getFdForAssetResult.getInputStream();
-                        mWeatherIcon = BitmapFactory.decodeStream(stream);
-
-                        float scaleWidth = (mWeatherTextPaint.getTextSize() / mWeatherIcon.getHeight()) * mWeatherIcon.getWidth();
-                        mWeatherIcon = Bitmap.createScaledBitmap(mWeatherIcon, (int) scaleWidth, (int) mWeatherTextPaint.getTextSize(), true);
+                        Bitmap icon = mIconCache.decode(iconId, stream, iconHeight);
+                        if (icon != null) {
+                            mWeatherIcon = icon;
+                            mWeatherIconId = iconId;
+                            mRenderer.setWeatherIcon(icon);
+                            invalidate();
+                        }
                     }
 
                     @Override
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+/**
+ * Decides when the watch face has to be drawn next in interactive mode. Updates come once per
+ * period of what is displayed, at the start of the next one, e.g. on the minute for a face
+ * without seconds.
+ */
+class UpdateScheduler {
+
+    /**
+     * Where the time comes from, so tests can control it.
+     */
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final Clock mClock;
+    private final long mPeriodMillis;
+
+    UpdateScheduler(Clock clock, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodMillis);
+        }
+        mClock = clock;
+        mPeriodMillis = periodMillis;
+    }
+
+    /**
+     * @return how long until the next period starts, never 0 so an update right on the
+     * boundary waits for the next one
+     */
+    long getDelayMillis() {
+        // Time zone offsets are whole minutes, so local periods start with the epoch ones
+        long now = mClock.currentTimeMillis();
+        return mPeriodMillis - (now % mPeriodMillis);
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.Build;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws the watch face. The time and date are formatted and measured once when the time shown
+ * or the day changes, not for every frame, so drawing a frame doesn't allocate anything.
+ *
+ * Everything but the time only changes with the weather or the day. It is drawn into an
+ * offscreen layer when one of them changes, and a frame is that layer with the time drawn over
+ * it. Ambient mode is drawn by an {@link AmbientRenderer} instead.
+ */
+class WatchFaceRenderer {
+    private static final Typeface NORMAL_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private static final long SECOND_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final int mBackgroundColor;
+    private final Paint mTimeTextPaint;
+    private final Paint mDateTextPaint;
+    private final Paint mWeatherTextPaint;
+
+    private final float mYOffsetTime;
+    private final float mYOffsetDate;
+    private final float mYOffsetLine;
+    private final float mYOffsetWeather;
+
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final SimpleDateFormat mSdfTime = new SimpleDateFormat("HH:mm");
+    private final SimpleDateFormat mSdfDate = new SimpleDateFormat("EEE, MMM dd yyyy");
+    // How long the time shown stays the same
+    private final long mUpdatePeriodMillis;
+
+    private final AmbientRenderer mAmbientRenderer;
+    private boolean mAmbient;
+
+    // The period and day mTimeText and mDateText are for, -1 when they have to be formatted again
+    private long mTextPeriod = -1;
+    private int mTextDay = -1;
+    private String mTimeText;
+    private float mTimeTextWidth;
+    private String mDateText;
+    private float mDateTextWidth;
+    // Formatting is the only thing a frame allocates for, apart from a new layer
+    private int mTextFormats;
+
+    private String mMaxTemperature;
+    private String mMinTemperature;
+    private float mMaxTemperatureWidth;
+    private Bitmap mWeatherIcon;
+
+    // The background, date and weather, drawn again when mLayerDirty
+    private Bitmap mLayer;
+    private final Canvas mLayerCanvas = new Canvas();
+    private boolean mLayerDirty = true;
+    private int mLayerRedraws;
+
+    WatchFaceRenderer(Resources resources) {
+        mYOffsetTime = resources.getDimension(R.dimen.offset_time_text);
+        mYOffsetDate = resources.getDimension(R.dimen.offset_date_text);
+        mYOffsetLine = resources.getDimension(R.dimen.offset_line);
+        mYOffsetWeather = resources.getDimension(R.dimen.offset_weather_text);
+
+        mAmbientRenderer = new AmbientRenderer(resources);
+
+        // Seconds only have to be drawn if the time shows them
+        mUpdatePeriodMillis = mSdfTime.toPattern().indexOf('s') >= 0 ? SECOND_MILLIS : MINUTE_MILLIS;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            mBackgroundColor = resources.getColor(R.color.primary, null);
+            mTimeTextPaint = createTextPaint(resources.getColor(R.color.white, null), resources.getDimension(R.dimen.text_size_time));
+            mDateTextPaint = createTextPaint(resources.getColor(R.color.primary_light, null), resources.getDimension(R.dimen.text_size_date));
+            mWeatherTextPaint = createTextPaint(resources.getColor(R.color.primary_light, null), resources.getDimension(R.dimen.text_size_weather));
+        }
+        else {
+            mBackgroundColor = resources.getColor(R.color.primary);
+            mTimeTextPaint = createTextPaint(resources.getColor(R.color.white), resources.getDimension(R.dimen.text_size_time));
+            mDateTextPaint = createTextPaint(resources.getColor(R.color.primary_light), resources.getDimension(R.dimen.text_size_date));
+            mWeatherTextPaint = createTextPaint(resources.getColor(R.color.primary_light), resources.getDimension(R.dimen.text_size_weather));
+        }
+    }
+
+    private static Paint createTextPaint(int textColor, float textSize) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTextSize(textSize);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        mSdfTime.setTimeZone(timeZone);
+        mSdfDate.setTimeZone(timeZone);
+        mTextPeriod = -1;
+        mTextDay = -1;
+        mLayerDirty = true;
+    }
+
+    /**
+     * @param lowBitAmbient    whether the display only has a few colors without anti-aliasing
+     *                         in ambient mode
+     * @param burnInProtection whether pixels lit for long burn in in ambient mode
+     */
+    void setDisplayProperties(boolean lowBitAmbient, boolean burnInProtection) {
+        mAmbientRenderer.setDisplayProperties(lowBitAmbient, burnInProtection);
+    }
+
+    /**
+     * Switches between interactive and ambient mode. Ambient frames don't use the layer, so it
+     * is freed on the way in rather than kept for as long as the watch stays ambient, and drawn
+     * again by the first interactive frame.
+     */
+    void setAmbient(boolean ambient) {
+        if (ambient && !mAmbient) {
+            releaseLayer();
+        }
+        mAmbient = ambient;
+    }
+
+    void setTemperatures(String maxTemperature, String minTemperature) {
+        mMaxTemperature = maxTemperature;
+        mMinTemperature = minTemperature;
+        mMaxTemperatureWidth = maxTemperature != null ? mWeatherTextPaint.measureText(maxTemperature) : 0;
+        mLayerDirty = true;
+    }
+
+    void setWeatherIcon(Bitmap weatherIcon) {
+        mWeatherIcon = weatherIcon;
+        mLayerDirty = true;
+    }
+
+    /**
+     * @return how often the time shown changes, the watch face doesn't have to be drawn more
+     * often in interactive mode
+     */
+    long getUpdatePeriodMillis() {
+        return mUpdatePeriodMillis;
+    }
+
+    /**
+     * @return how tall the weather icon is drawn, as tall as the temperatures
+     */
+    int getWeatherIconHeight() {
+        return (int) mWeatherTextPaint.getTextSize();
+    }
+
+    /**
+     * Draws a frame, in interactive mode taking everything but the time from the layer.
+     */
+    void draw(Canvas canvas, Rect bounds, long nowMillis) {
+        updateText(nowMillis);
+
+        if (mAmbient) {
+            mAmbientRenderer.draw(canvas, bounds, nowMillis,
+                    mTimeText, mTimeTextWidth, mDateText, mDateTextWidth);
+            return;
+        }
+
+        if (mLayer == null
+                || mLayer.getWidth() != bounds.width() || mLayer.getHeight() != bounds.height()) {
+            releaseLayer();
+            mLayer = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+            mLayerCanvas.setBitmap(mLayer);
+            mLayerDirty = true;
+        }
+        if (mLayerDirty) {
+            mLayerDirty = false;
+            mLayerRedraws++;
+            // The layer starts at 0, 0 whatever the bounds
+            mLayerCanvas.save();
+            mLayerCanvas.translate(-bounds.left, -bounds.top);
+            drawStatic(mLayerCanvas, bounds);
+            mLayerCanvas.restore();
+        }
+        canvas.drawBitmap(mLayer, bounds.left, bounds.top, null);
+        drawTime(canvas, bounds);
+    }
+
+    /**
+     * Draws an interactive frame from scratch, without the layer.
+     */
+    void drawWithoutLayer(Canvas canvas, Rect bounds, long nowMillis) {
+        updateText(nowMillis);
+        drawStatic(canvas, bounds);
+        drawTime(canvas, bounds);
+    }
+
+    /**
+     * Frees the layer, it's created again by the next frame.
+     */
+    void releaseLayer() {
+        if (mLayer != null) {
+            mLayerCanvas.setBitmap(null);
+            mLayer.recycle();
+            mLayer = null;
+        }
+    }
+
+    private void drawTime(Canvas canvas, Rect bounds) {
+        canvas.drawText(mTimeText, bounds.centerX() - mTimeTextWidth / 2, mYOffsetTime, mTimeTextPaint);
+    }
+
+    private void drawStatic(Canvas canvas, Rect bounds) {
+        // Background
+        canvas.drawColor(mBackgroundColor);
+
+        // Date
+        canvas.drawText(mDateText, bounds.centerX() - mDateTextWidth / 2, mYOffsetDate, mDateTextPaint);
+
+        // Weather info
+        if (mMinTemperature != null && mMaxTemperature != null && mWeatherIcon != null) {
+
+            canvas.drawLine(bounds.centerX() - 30, mYOffsetLine, bounds.centerX() + 30, mYOffsetLine, mDateTextPaint);
+
+            float maxTempTextLenght = mMaxTemperatureWidth / 2;
+            float xOffsetWeatherIcon = bounds.centerX() - (mWeatherIcon.getWidth() + (maxTempTextLenght / 2) + 20);
+
+            canvas.drawBitmap(mWeatherIcon, xOffsetWeatherIcon, mYOffsetWeather - mWeatherIcon.getHeight(), null);
+            canvas.drawText(mMaxTemperature, bounds.centerX() - (maxTempTextLenght), mYOffsetWeather, mWeatherTextPaint);
+            canvas.drawText(mMinTemperature, bounds.centerX() + (maxTempTextLenght / 2) + 20, mYOffsetWeather, mWeatherTextPaint);
+        }
+    }
+
+    /**
+     * Formats and measures the time, and the date if the day changed, unless it's still the
+     * period they were formatted for.
+     */
+    private void updateText(long nowMillis) {
+        // Time zone offsets are whole minutes, so local minutes start with the epoch ones
+        long period = nowMillis / mUpdatePeriodMillis;
+        if (period == mTextPeriod) {
+            return;
+        }
+        mTextPeriod = period;
+        mTextFormats++;
+        mCalendar.setTimeInMillis(nowMillis);
+        mTimeText = mSdfTime.format(mCalendar.getTime());
+        mTimeTextWidth = mTimeTextPaint.measureText(mTimeText);
+
+        int day = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+        if (day != mTextDay) {
+            mTextDay = day;
+            mDateText = mSdfDate.format(mCalendar.getTime()).toUpperCase();
+            mDateTextWidth = mDateTextPaint.measureText(mDateText);
+            mLayerDirty = true;
+        }
+    }
+
+    String getTimeText() {
+        return mTimeText;
+    }
+
+    String getDateText() {
+        return mDateText;
+    }
+
+    /**
+     * @return how often the time was formatted so far, along with the date if the day changed
+     */
+    int getTextFormats() {
+        return mTextFormats;
+    }
+
+    /**
+     * @return whether the layer is allocated
+     */
+    boolean hasLayer() {
+        return mLayer != null;
+    }
+
+    /**
+     * @return how often the layer was drawn so far
+     */
+    int getLayerRedraws() {
+        return mLayerRedraws;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Weather icons decoded for the watch face, already scaled to the height they are drawn at and
+ * kept by icon id and height. Icons are decoded straight at the coarsest sample size that is
+ * still tall enough, so the full size bitmap is never allocated, and what is decoded before
+ * scaling is reused for the next decode.
+ */
+class WeatherIconCache {
+    private static final String LOG_TAG = WeatherIconCache.class.getSimpleName();
+
+    // Scaled to the text size an icon is a few KB, this holds every condition several times over
+    static final int MAX_BYTES = 256 * 1024;
+
+    private final LruCache<String, Bitmap> mIcons;
+    // Decoded into before scaling, kept as the inBitmap of the next decode
+    private Bitmap mScratch;
+
+    WeatherIconCache(int maxBytes) {
+        mIcons = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @return the icon decoded before at this height, or null if there is none
+     */
+    synchronized Bitmap get(String iconId, int height) {
+        if (iconId == null) {
+            return null;
+        }
+        return mIcons.get(getKey(iconId, height));
+    }
+
+    /**
+     * Decodes an icon at the given height, keeping it if it has an id.
+     *
+     * @param stream the encoded icon, read and closed
+     * @return the icon, or null if it couldn't be decoded
+     */
+    synchronized Bitmap decode(String iconId, InputStream stream, int height) {
+        byte[] data = readFully(stream);
+        if (data == null || height <= 0) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.d(LOG_TAG, "Not an image: " + iconId);
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSampleSize(options.outHeight, height);
+        options.inMutable = true;
+
+        int sampledBytes = (options.outWidth / options.inSampleSize)
+                * (options.outHeight / options.inSampleSize) * 4;
+        if (mScratch != null && mScratch.getAllocationByteCount() >= sampledBytes) {
+            options.inBitmap = mScratch;
+        }
+        Bitmap sampled;
+        try {
+            sampled = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // The scratch bitmap can't be decoded into after all
+            options.inBitmap = null;
+            sampled = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        if (sampled == null) {
+            return null;
+        }
+
+        int width = Math.max(1, Math.round((float) height / sampled.getHeight() * sampled.getWidth()));
+        Bitmap icon = Bitmap.createScaledBitmap(sampled, width, height, true);
+        // The same bitmap comes back when no scaling was needed, which can't be reused then
+        mScratch = icon != sampled ? sampled : null;
+
+        if (iconId != null) {
+            mIcons.put(getKey(iconId, height), icon);
+        }
+        return icon;
+    }
+
+    /**
+     * Gives memory back, see {@link ComponentCallbacks2#onTrimMemory(int)}. Icons being drawn
+     * stay with the watch face, only the other ones are dropped.
+     */
+    synchronized void trimMemory(int level) {
+        mScratch = null;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mIcons.evictAll();
+        } else {
+            mIcons.trimToSize(mIcons.size() / 2);
+        }
+    }
+
+    /**
+     * @return the largest power of two the icon can be scaled down by and still be at least
+     * as tall as wanted
+     */
+    static int getSampleSize(int sourceHeight, int height) {
+        int sampleSize = 1;
+        while (sourceHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static String getKey(String iconId, int height) {
+        return iconId + "@" + height;
+    }
+
+    private static byte[] readFully(InputStream stream) {
+        if (stream == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "Error reading icon: " + e.getMessage());
+            return null;
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Nothing left to read anyway
+            }
+        }
+    }
+}